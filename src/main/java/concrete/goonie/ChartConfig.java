@@ -1,7 +1,8 @@
 package concrete.goonie;
 
+import concrete.goonie.core.text.FontCache;
+
 import java.awt.*;
-import java.io.File;
 import java.time.LocalDateTime;
 
 public class ChartConfig {
@@ -60,6 +61,14 @@ public class ChartConfig {
 
     private Theme theme = Theme.LIGHT;
 
+    // Rendering: Java2D shapes, or candles and grid rasterized straight into an int[] image
+    public enum RenderBackend {JAVA2D, RASTER}
+
+    private RenderBackend renderBackend = RenderBackend.JAVA2D;
+
+    // Render each pane's data layer on a pool thread instead of the EDT
+    private boolean parallelRendering = false;
+
     // -------- Getters --------
     public Color getBackgroundColor() {
         return backgroundColor;
@@ -177,6 +186,14 @@ public class ChartConfig {
         return theme;
     }
 
+    public RenderBackend getRenderBackend() {
+        return renderBackend;
+    }
+
+    public boolean isParallelRendering() {
+        return parallelRendering;
+    }
+
     public void setAutoScaleY(boolean autoScaleY) {
         this.autoScaleY = autoScaleY;
     }
@@ -338,22 +355,66 @@ public class ChartConfig {
         this.theme = theme;
         return this;
     }
+
+    public ChartConfig setRenderBackend(RenderBackend backend) {
+        this.renderBackend = backend;
+        return this;
+    }
+
+    public ChartConfig setParallelRendering(boolean parallelRendering) {
+        this.parallelRendering = parallelRendering;
+        return this;
+    }
+
+    /**
+     * Returns an independent copy of this configuration. Painting writes layout state back
+     * into the config (the price axis width), so code rendering on several threads at once
+     * gives each render its own copy.
+     */
+    public ChartConfig copy() {
+        ChartConfig copy = new ChartConfig();
+        copy.backgroundColor = backgroundColor;
+        copy.axisColor = axisColor;
+        copy.gridColor = gridColor;
+        copy.bullishColor = bullishColor;
+        copy.bearishColor = bearishColor;
+        copy.textColor = textColor;
+        copy.movingAverageColor = movingAverageColor;
+        copy.trendlineColor = trendlineColor;
+        copy.crosshairColor = crosshairColor;
+        copy.textFont = textFont;
+        copy.startDateTime = startDateTime;
+        copy.marginTop = marginTop;
+        copy.marginBottom = marginBottom;
+        copy.marginLeft = marginLeft;
+        copy.marginRight = marginRight;
+        copy.showGrid = showGrid;
+        copy.showAxisLabels = showAxisLabels;
+        copy.showCrosshair = showCrosshair;
+        copy.candleWidth = candleWidth;
+        copy.wickWidth = wickWidth;
+        copy.gridSpacing = gridSpacing;
+        copy.labelPadding = labelPadding;
+        copy.enableAntiAliasing = enableAntiAliasing;
+        copy.enableZoom = enableZoom;
+        copy.enablePan = enablePan;
+        copy.autoScaleY = autoScaleY;
+        copy.timeFormat = timeFormat;
+        copy.pricePrecision = pricePrecision;
+        copy.maxVisibleBars = maxVisibleBars;
+        copy.yPad = yPad;
+        copy.crosshairStroke = crosshairStroke;
+        copy.theme = theme;
+        copy.renderBackend = renderBackend;
+        copy.parallelRendering = parallelRendering;
+        return copy;
+    }
+
+    /**
+     * Returns the chart font, Inter, in {@code style} and {@code size}; see {@link FontCache}.
+     */
     public static Font getFont(int style,float size) {
-        Font interFont = new Font("Arial",style, (int) size);
-
-        try {
-            if(Font.BOLD == style){
-                interFont = Font.createFont(Font.TRUETYPE_FONT, new File("src/main/resources/Inter-Bold.ttf")).deriveFont(size);
-            }
-            else{
-                interFont = Font.createFont(Font.TRUETYPE_FONT, new File("src/main/resources/Inter-Regular.ttf")).deriveFont(size);
-            }
-
-            GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(interFont);
-        } catch (Exception e) {
-          //  System.out.println("Inter font not found, falling back to Roboto/Arial");
-        }
-        return interFont;
+        return FontCache.getFont(style, size);
     }
 
     public LocalDateTime getStartDateTime() {
@@ -2,6 +2,10 @@ package concrete.goonie;
 
 
 import concrete.goonie.core.Chart;
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.DatasetRegistry;
+import concrete.goonie.core.data.Resampler;
 
 import javax.swing.*;
 import java.awt.*;
@@ -32,6 +36,16 @@ public class Main {
             });
             holder.add(removeWindow);
 
+            // The timeframes that can be built from the loaded history
+            JComboBox<ENUM_TIMEFRAME> timeframes = new JComboBox<>();
+            for (ENUM_TIMEFRAME timeframe : ENUM_TIMEFRAME.values()) {
+                if (timeframe == chart.getTimeframe() || Resampler.canResample(chart.getTimeframe(), timeframe)) {
+                    timeframes.addItem(timeframe);
+                }
+            }
+            timeframes.setSelectedItem(chart.getTimeframe());
+            timeframes.addActionListener(e -> chart.setTimeframe((ENUM_TIMEFRAME) timeframes.getSelectedItem()));
+            holder.add(timeframes);
 
             add(holder, BorderLayout.NORTH);
             add(chart, BorderLayout.CENTER);
@@ -56,27 +70,54 @@ public class Main {
             }
         }
 
-        // Splash screen logic
+        // Start loading the history in the background; the chart draws it as it arrives
+        Dataset history = DatasetRegistry.getInstance().acquire(Chart.DEFAULT_DATASET);
+
+        // Splash screen logic: report the real load progress until the frame replaces it
         SplashScreen splash = SplashScreen.getSplashScreen();
+        Dataset.DatasetListener progress = null;
         if (splash != null) {
             Graphics2D g = splash.createGraphics();
-
-            if (g != null) {
-                g.drawString("Loading App...", 100, 150);
-                splash.update();
-            }
-            try {
-                Thread.sleep(3000);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-            splash.close();
+            progress = (dataset, fraction) -> drawSplashProgress(splash, g, fraction);
+            drawSplashProgress(splash, g, history.getProgress());
+            history.addListener(progress);
         }
 
+        // Never wait for the history here; MainWindow shows the loading state and draws the bars as they arrive
         frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         frame.setSize(1000, 700);
         frame.setContentPane(new Ui());
         frame.setVisible(true);
+
+        // Showing the frame closed the splash; the chart holds its own reference now
+        if (progress != null) {
+            history.removeListener(progress);
+        }
+        DatasetRegistry.getInstance().release(history);
+    }
+
+    private static synchronized void drawSplashProgress(SplashScreen splash, Graphics2D g, double fraction) {
+        if (g == null) {
+            return;
+        }
+        try {
+            Dimension size = splash.getSize();
+            int barWidth = size.width / 2;
+            int barX = (size.width - barWidth) / 2;
+            int barY = size.height - 40;
+
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, barY - 20, size.width, 32);
+            g.setPaintMode();
+
+            g.setColor(Color.WHITE);
+            g.drawString("Loading history… " + Math.round(fraction * 100) + "%", barX, barY - 6);
+            g.drawRect(barX, barY, barWidth, 6);
+            g.fillRect(barX, barY, (int) (barWidth * fraction), 6);
+            splash.update();
+        } catch (IllegalStateException e) {
+            // splash was closed in the meantime
+        }
     }
 
 }
\ No newline at end of file
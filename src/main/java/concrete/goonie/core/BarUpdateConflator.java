@@ -0,0 +1,163 @@
+package concrete.goonie.core;
+
+import concrete.goonie.core.data.Dataset;
+
+import javax.swing.*;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Sits between a live {@link Dataset} and the panes showing it, so a burst of bar updates costs
+ * one repaint per frame rather than one per update.
+ * <p>
+ * Updates published on the feed thread are only merged into a pending bar range. At most once
+ * per frame interval the EDT takes that range and hands it to the listeners as a single
+ * "dirty since version N" notification: every bar a published update touched after
+ * {@linkplain Dataset#getVersion() dataset version} N lies in the range. Updates arriving
+ * while a frame is pending are folded into it, the same way the {@link RenderScheduler}
+ * folds viewport changes.
+ */
+public class BarUpdateConflator implements Dataset.DatasetListener {
+
+    /**
+     * Receives the merged updates of one frame, on the EDT.
+     */
+    @FunctionalInterface
+    public interface DirtyBarsListener {
+        /**
+         * Bars {@code firstBar..lastBar} changed between dataset versions {@code sinceVersion}
+         * and {@code version}.
+         */
+        void onBarsDirty(Dataset dataset, long sinceVersion, long version, int firstBar, int lastBar);
+    }
+
+    private final Dataset dataset;
+    private final int frameInterval;
+    private final Timer timer;
+    private final List<DirtyBarsListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Pending frame, guarded by this
+    private boolean framePending;
+    private long sinceVersion;
+    private long version;
+    private int firstBar = Integer.MAX_VALUE;
+    private int lastBar = -1;
+    private long updatesReceived;
+    private long framesIssued;
+
+    private long lastFrameTime; // EDT only
+
+    public BarUpdateConflator(Dataset dataset) {
+        this(dataset, RenderScheduler.DEFAULT_FRAME_INTERVAL_MS);
+    }
+
+    /**
+     * Starts listening to {@code dataset}; {@link #dispose()} stops it.
+     */
+    public BarUpdateConflator(Dataset dataset, int frameIntervalMillis) {
+        this.dataset = dataset;
+        this.frameInterval = frameIntervalMillis;
+        this.timer = new Timer(frameIntervalMillis, e -> flush());
+        timer.setRepeats(false);
+        timer.setCoalesce(true);
+        this.sinceVersion = this.version = dataset.getVersion();
+        dataset.addListener(this);
+    }
+
+    public void addListener(DirtyBarsListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(DirtyBarsListener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void onProgress(Dataset dataset, double progress) {
+    }
+
+    /**
+     * Merges an update into the pending frame. Runs on the feed thread; only the first update
+     * after a frame went out schedules the next one.
+     */
+    @Override
+    public void onBarsUpdated(Dataset dataset, int firstBar, int lastBar) {
+        synchronized (this) {
+            updatesReceived++;
+            version = dataset.getVersion(); // The writer publishes one version at a time
+            this.firstBar = Math.min(this.firstBar, firstBar);
+            this.lastBar = Math.max(this.lastBar, lastBar);
+            if (framePending) {
+                return;
+            }
+            framePending = true;
+        }
+        SwingUtilities.invokeLater(this::scheduleFrame);
+    }
+
+    // Keeps a fixed cadence: an idle chart shows an update at once, a busy one once per interval
+    private void scheduleFrame() {
+        long sinceLastFrame = System.currentTimeMillis() - lastFrameTime;
+        timer.setInitialDelay((int) Math.max(0, frameInterval - sinceLastFrame));
+        timer.restart();
+    }
+
+    /**
+     * Hands the pending updates to the listeners right away instead of waiting for the next
+     * frame. EDT only.
+     */
+    public void flush() {
+        timer.stop();
+        long since, version;
+        int first, last;
+        synchronized (this) {
+            if (!framePending) {
+                return;
+            }
+            framePending = false;
+            first = firstBar;
+            last = lastBar;
+            firstBar = Integer.MAX_VALUE;
+            lastBar = -1;
+            since = sinceVersion;
+            version = this.version;
+            sinceVersion = version;
+            framesIssued++;
+        }
+        lastFrameTime = System.currentTimeMillis();
+        for (DirtyBarsListener listener : listeners) {
+            listener.onBarsDirty(dataset, since, version, first, last);
+        }
+    }
+
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Number of bar updates the dataset published.
+     */
+    public synchronized long getUpdatesReceived() {
+        return updatesReceived;
+    }
+
+    /**
+     * Number of merged notifications handed to the listeners.
+     */
+    public synchronized long getFramesIssued() {
+        return framesIssued;
+    }
+
+    public void dispose() {
+        dataset.removeListener(this);
+        timer.stop();
+        synchronized (this) {
+            framePending = false;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "BarUpdateConflator{updates=" + updatesReceived + ", frames=" + framesIssued + '}';
+    }
+}
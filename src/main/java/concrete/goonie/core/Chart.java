@@ -1,32 +1,61 @@
 package concrete.goonie.core;
 
 import concrete.goonie.ChartConfig;
+import concrete.goonie.core.axis.TickPlanner;
 import concrete.goonie.core.axis.XAxis;
 import concrete.goonie.core.chartlayers.*;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.DatasetKey;
+import concrete.goonie.core.data.DatasetRegistry;
+import concrete.goonie.core.data.TimeIndex;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.geom.AffineTransform;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.List;
 
 public class Chart extends JPanel implements SubWindowListener {
     private final ChartConfig config;
-    private ENUM_TIMEFRAME timeframe = ENUM_TIMEFRAME.PERIOD_H1;
+    private ENUM_TIMEFRAME timeframe;
+    public static final DatasetKey DEFAULT_DATASET = new DatasetKey("Boom.csv", "Boom", ENUM_TIMEFRAME.PERIOD_H1);
+    private final DatasetKey datasetKey;
     private List<ChartWindow> panes = new ArrayList<>();
     private final AffineTransform transform;
     private final ChartMouseHandler mouseHandler;
+    private final RenderScheduler renderScheduler;
+    private TickPlanner tickPlanner;
+    private final Dataset history;
     private final MainWindow mainWindow;
     private final MultiSplitPane multiSplit;
     private final XAxis xAxis;
+    private BarUpdateConflator barUpdates;
 
     public Chart(ChartConfig config) {
+        this(config, DEFAULT_DATASET);
+    }
+
+    /**
+     * Creates a chart of the dataset registered under {@code datasetKey}, loading it through
+     * the {@link DatasetRegistry} unless it is already there.
+     */
+    public Chart(ChartConfig config, DatasetKey datasetKey) {
         this.config = config;
+        this.datasetKey = datasetKey;
+        this.timeframe = datasetKey.timeframe();
         this.transform = new AffineTransform();
-        this.mouseHandler = new ChartMouseHandler(config, panes, this);
-        this.mainWindow = new MainWindow(timeframe, config);
+        this.renderScheduler = new RenderScheduler();
+        this.mouseHandler = new ChartMouseHandler(config, panes, this, renderScheduler);
+        this.history = DatasetRegistry.getInstance().acquire(datasetKey);
+        this.mainWindow = new MainWindow(timeframe, config, history);
+        this.tickPlanner = new TickPlanner(config, timeframe, mainWindow.getDataset());
+        this.mainWindow.setTickPlanner(tickPlanner);
         this.mainWindow.setTransform(mouseHandler.getTransform());
 
         this.multiSplit = new MultiSplitPane(JSplitPane.VERTICAL_SPLIT);
@@ -42,14 +71,34 @@ public class Chart extends JPanel implements SubWindowListener {
         multiSplit.setDividersBackground(config.getBackgroundColor());
 
         xAxis = new XAxis(timeframe, config);
+        xAxis.setTickPlanner(tickPlanner);
         panes.add(xAxis);
         mouseHandler.addListener(xAxis);
         add(xAxis, BorderLayout.SOUTH);
+        mainWindow.addPropertyChangeListener(ChartWindow.AXIS_WIDTH_PROPERTY, axisWidthChanged);
 
         init();
 
+        history.addListener(refreshOnLoad);
+
+        // Live updates reach the panes merged into one bar range per frame
+        barUpdates = new BarUpdateConflator(history);
+        barUpdates.addListener(this::onBarsDirty);
     }
 
+    // Bars arrive in chunks while the dataset loads; keep auto-fitted panes fitted to them
+    private final Dataset.DatasetListener refreshOnLoad = new Dataset.DatasetListener() {
+        @Override
+        public void onProgress(Dataset dataset, double progress) {
+            SwingUtilities.invokeLater(mouseHandler::refreshView);
+        }
+
+        @Override
+        public void onLoaded(Dataset dataset) {
+            SwingUtilities.invokeLater(mouseHandler::refreshView);
+        }
+    };
+
     private void init() {
         addComponentListener(new ComponentAdapter() {
             @Override
@@ -63,14 +112,19 @@ public class Chart extends JPanel implements SubWindowListener {
 
     int count = 0;
 
+    private final PropertyChangeListener axisWidthChanged = this::onAxisWidthChanged;
+
     public void addWindow() {
-        SubWindow subWindow = new SubWindow(timeframe, config, this);
+        Dataset base = DatasetRegistry.getInstance().acquire(datasetKey);
+        SubWindow subWindow = new SubWindow(timeframe, config, base.resample(timeframe), this);
         subWindow.setText(String.valueOf(count));
+        subWindow.setTickPlanner(tickPlanner);
         subWindow.setTransform(mouseHandler.getTransform());
 
         multiSplit.addComponent(subWindow, 2.0);
         panes.add(subWindow);
         mouseHandler.addListener(subWindow);
+        subWindow.addPropertyChangeListener(ChartWindow.AXIS_WIDTH_PROPERTY, axisWidthChanged);
         count = panes.size();
         revalidate();
         repaint();
@@ -95,18 +149,112 @@ public class Chart extends JPanel implements SubWindowListener {
     public void onSubWindowRemoved(SubWindow subWindow) {
         panes.remove(subWindow);
         mouseHandler.removeListener(subWindow);
+        subWindow.removePropertyChangeListener(ChartWindow.AXIS_WIDTH_PROPERTY, axisWidthChanged);
         multiSplit.removeComponent(subWindow);
+        subWindow.dispose();
+        DatasetRegistry.getInstance().release(history); // The pane may show a timeframe resampled from it
         revalidate();
         repaint();
     }
 
+    private void onBarsDirty(Dataset dataset, long sinceVersion, long version, int firstBar, int lastBar) {
+        for (ChartWindow pane : panes) {
+            if (pane != xAxis) {
+                pane.invalidateBars(firstBar, lastBar);
+            }
+        }
+        mouseHandler.refreshView();
+    }
+
+    // The time axis stops its labels at the price axis; redraw it when a pane resizes that strip
+    private void onAxisWidthChanged(PropertyChangeEvent event) {
+        xAxis.invalidateLayers();
+    }
+
     @Override
     public void onResize(SubWindow subWindow) {
-        //mouseHandler.adjustPaneScaleY( subWindow);
+        mouseHandler.refreshView();
     }
 
 
+    /**
+     * Shows the chart's history in {@code timeframe}, built from the loaded bars by
+     * {@link Dataset#resample}; bars keep arriving while the history loads or a live feed
+     * updates it. The view keeps its zoom and stays centred on the same time.
+     *
+     * @throws IllegalArgumentException if {@code timeframe} cannot be built from the timeframe
+     *                                  of the history
+     */
+    public void setTimeframe(ENUM_TIMEFRAME timeframe) {
+        if (timeframe == this.timeframe) {
+            return;
+        }
+        Dataset shown = history.resample(timeframe);
+        Dataset previous = mainWindow.getDataset();
+        TimeIndex previousIndex = previous.getTimeIndex();
+        long centerTime = previousIndex.size() == 0 ? Long.MIN_VALUE : previousIndex.timeAt(mouseHandler.getCenterBar());
+
+        previous.removeListener(refreshOnLoad);
+        barUpdates.dispose();
+        this.timeframe = timeframe;
+        tickPlanner = new TickPlanner(config, timeframe, shown);
+        for (ChartWindow pane : panes) {
+            if (pane instanceof MainWindow) {
+                ((MainWindow) pane).setDataset(shown);
+            } else if (pane instanceof SubWindow) {
+                ((SubWindow) pane).setDataset(shown);
+            }
+            pane.setTickPlanner(tickPlanner);
+        }
+        shown.addListener(refreshOnLoad);
+        barUpdates = new BarUpdateConflator(shown);
+        barUpdates.addListener(this::onBarsDirty);
+
+        TimeIndex index = shown.getTimeIndex();
+        if (centerTime != Long.MIN_VALUE && index.size() > 0) {
+            mouseHandler.centerOnBar(Math.max(0, index.floorIndex(centerTime)));
+        }
+        mouseHandler.refreshView();
+    }
+
+    public ENUM_TIMEFRAME getTimeframe() {
+        return timeframe;
+    }
+
+    /**
+     * Scrolls the chart so the last bar at or before {@code time} sits in the middle of the
+     * plot, or the first bar if the history starts later.
+     *
+     * @return {@code false} if no bars have been loaded yet
+     */
+    public boolean jumpTo(LocalDateTime time) {
+        TimeIndex index = mainWindow.getDataset().getTimeIndex();
+        if (index.size() == 0) {
+            return false;
+        }
+        int bar = Math.max(0, index.floorIndex(time.toEpochSecond(ZoneOffset.UTC)));
+        mouseHandler.centerOnBar(bar);
+        return true;
+    }
+
+    /**
+     * The stage that merges live bar updates into one repaint per frame; its counters tell
+     * how many updates arrived and how many frames they took. A new one takes over when the
+     * {@linkplain #setTimeframe timeframe} changes.
+     */
+    public BarUpdateConflator getBarUpdateConflator() {
+        return barUpdates;
+    }
+
     public ChartConfig getConfig() {
         return config;
     }
+
+    /**
+     * The scheduler that applies view changes once per frame; {@link RenderScheduler#flush()}
+     * applies a pending change immediately.
+     */
+    public RenderScheduler getRenderScheduler() {
+        return renderScheduler;
+    }
 }
\ No newline at end of file
@@ -3,19 +3,28 @@ package concrete.goonie.core;
 import concrete.goonie.ChartConfig;
 import concrete.goonie.core.axis.XAxis;
 import concrete.goonie.core.chartlayers.ChartWindow;
+import concrete.goonie.core.chartlayers.MainWindow;
+import concrete.goonie.core.data.OhlcPyramid;
+import concrete.goonie.core.data.PagedCandleSeries;
+import concrete.goonie.datatypes.CandleData;
 
 import java.awt.*;
 import java.awt.event.*;
 import java.awt.geom.AffineTransform;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class ChartMouseHandler extends MouseAdapter implements MouseMotionListener, MouseWheelListener, KeyListener {
 
     private final List<ChartWindow> panes;
     private final Chart chart;
     private final AffineTransform transform;
+    private final RenderScheduler scheduler;
+    private final AffineTransform paneTransform = new AffineTransform(); // Reused for every pane and frame
+    private final AffineTransform xAxisTransform = new AffineTransform();
     private double width, height;
     private int lastX, lastY;
     private boolean isDragging = false;
@@ -23,6 +32,8 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
 
     private final Map<ChartWindow, Double> paneTranslateY = new HashMap<>();
     private final Map<ChartWindow, Double> paneScaleY = new HashMap<>();
+    private final Set<ChartWindow> manualScaleY = new HashSet<>(); // Panes the user scaled by hand
+    private final double[] valueRange = new double[2];
     private ChartWindow focusedPane;
 
     private DragMode dragMode = DragMode.BOTH;
@@ -32,16 +43,20 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
     private double scaleY = 19.0;
     private double translateX = 0;
     private double translateY = 0;
+    private double prefetchedTranslateX = Double.NaN; // View of the last prefetch
+    private double prefetchedScaleX = Double.NaN;
 
     public enum DragMode {
         NONE, HORIZONTAL, VERTICAL, BOTH
     }
 
-    public ChartMouseHandler(ChartConfig config, List<ChartWindow> panes, Chart chart) {
+    public ChartMouseHandler(ChartConfig config, List<ChartWindow> panes, Chart chart, RenderScheduler scheduler) {
         this.panes = panes;
         this.chart = chart;
         this.config = config;
+        this.scheduler = scheduler;
         transform = new AffineTransform();
+        scheduler.setViewportUpdate(this::updateAllPanels);
         initializePaneTransforms();
         resetView();
     }
@@ -64,7 +79,25 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
 
        if (mousePosition == null) return;
         focusedPane.showGui();
+        updateCrosshair(e.getX(), e.getY());
+    }
 
+    /**
+     * Moves the crosshair: the time line follows the mouse across every pane, the price line is
+     * only drawn in the pane under the mouse.
+     */
+    private void updateCrosshair(int x, int y) {
+        for (ChartWindow pane : panes) {
+            if (!(pane instanceof XAxis)) {
+                pane.setCrosshair(x, pane == focusedPane ? y : -1);
+            }
+        }
+    }
+
+    private void clearCrosshair() {
+        for (ChartWindow pane : panes) {
+            pane.clearCrosshair();
+        }
     }
 
     @Override
@@ -90,9 +123,10 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
 
         lastX = x;
         lastY = y;
+        updateCrosshair(x, y);
 
         updateTransform();
-        updateAllPanels();
+        scheduler.requestViewportUpdate();
     }
 
     @Override
@@ -118,6 +152,8 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             return;
         }
 
+        clearCrosshair();
+
         // Only hide GUI if this was the focused pane
         if (exitedPane.equals(focusedPane)) {
             exitedPane.hideGui();
@@ -154,14 +190,16 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             translateX -= (mouseX - translateX) * (zoomFactor - 1);
             scaleX *= zoomFactor;
         } else if (insideRight && insideBottom) {
-            // Y-axis zoom for focused pane only
-            double flippedMouseY = height - mouseY;
-            double currentTranslateY = paneTranslateY.getOrDefault(focusedPane, 0.0);
-            double currentScaleY = paneScaleY.getOrDefault(focusedPane, 19.0);
-
-            // Apply zoom centered at mouse position
-            paneTranslateY.put(focusedPane, currentTranslateY - (flippedMouseY - currentTranslateY) * (zoomFactor - 1));
-            paneScaleY.put(focusedPane, currentScaleY * zoomFactor);
+            // Y-axis zoom for focused pane only, unless it fits itself to the visible bars
+            if (!isAutoScaled(focusedPane)) {
+                double flippedMouseY = height - mouseY;
+                double currentTranslateY = paneTranslateY.getOrDefault(focusedPane, 0.0);
+                double currentScaleY = paneScaleY.getOrDefault(focusedPane, 19.0);
+
+                // Apply zoom centered at mouse position
+                paneTranslateY.put(focusedPane, currentTranslateY - (flippedMouseY - currentTranslateY) * (zoomFactor - 1));
+                paneScaleY.put(focusedPane, currentScaleY * zoomFactor);
+            }
 
             // X-axis is still shared
             translateX -= (mouseX - translateX) * (zoomFactor - 1);
@@ -171,7 +209,8 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             translateX -= (mouseX - translateX) * (zoomFactor - 1);
             scaleX *= zoomFactor;
         } else if (insideBottom) {
-            // Y-axis only for focused pane
+            // Y-axis only for focused pane; scaling the price axis by hand ends auto-fitting
+            manualScaleY.add(focusedPane);
             double flippedMouseY = height - mouseY;
             double currentTranslateY = paneTranslateY.getOrDefault(focusedPane, 0.0);
             double currentScaleY = paneScaleY.getOrDefault(focusedPane, 19.0);
@@ -180,26 +219,34 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             paneScaleY.put(focusedPane, currentScaleY * zoomFactor);
         }
 
-        updateAllPanels();
+        scheduler.requestViewportUpdate();
     }
     private void handleDrag(int deltaX, int deltaY) {
         // Always apply X-axis changes to all panes
         translateX += deltaX;
 
-        // Apply Y-axis changes only to the focused pane
-        if (focusedPane != null && (dragMode == DragMode.VERTICAL || dragMode == DragMode.BOTH)) {
+        // Apply Y-axis changes only to the focused pane; dragging the price axis takes it off
+        // auto-fit, a plain drag on an auto-fitted pane only pans horizontally
+        if (focusedPane != null && dragMode == DragMode.VERTICAL) {
+            manualScaleY.add(focusedPane);
+        }
+        if (focusedPane != null && (dragMode == DragMode.VERTICAL || dragMode == DragMode.BOTH)
+                && !isAutoScaled(focusedPane)) {
             double currentTranslateY = paneTranslateY.getOrDefault(focusedPane, 0.0);
             paneTranslateY.put(focusedPane, currentTranslateY - deltaY);
         }
-
-        updateAllPanels();
     }
+    /**
+     * Pushes the current view to every pane. Runs once per frame from the {@link RenderScheduler};
+     * everything else only requests a frame.
+     */
     private void updateAllPanels() {
         for (ChartWindow pane : panes) {
-            AffineTransform paneTransform = new AffineTransform();
-
+            if (isAutoScaled(pane)) {
+                autoFitPane(pane);
+            }
             // Shared X-axis components
-            paneTransform.scale(1, -1);  // Flip Y-axis
+            paneTransform.setToScale(1, -1);  // Flip Y-axis
 
             // Individual Y translation
             double yTranslate = paneTranslateY.getOrDefault(pane, 0.0);
@@ -210,7 +257,9 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             paneTransform.scale(scaleX, yScale);
 
             if (pane instanceof XAxis) {
-                pane.setTransform(getXAxisTransform());
+                xAxisTransform.setToTranslation(translateX, 0);
+                xAxisTransform.scale(scaleX, 1);
+                pane.setTransform(xAxisTransform);
             } else {
                 pane.setTransform(paneTransform);
             }
@@ -218,11 +267,87 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             pane.setChartHeight(height);
             pane.setChartWidth(width);
         }
+        prefetchHistory();
+    }
+
+    /**
+     * Has a paged history load the chunks the view is heading for in the background: one view
+     * width past the edge it pans towards, or past both edges after a zoom or a jump.
+     */
+    private void prefetchHistory() {
+        if (scaleX <= 0 || (translateX == prefetchedTranslateX && scaleX == prefetchedScaleX)) {
+            return;
+        }
+        double moved = scaleX == prefetchedScaleX ? translateX - prefetchedTranslateX : 0;
+        prefetchedTranslateX = translateX;
+        prefetchedScaleX = scaleX;
+
+        // Zoomed out this far the bars are drawn from the stored pyramid levels, not read
+        if (1.0 / scaleX >= 1 << OhlcPyramid.COMPACT_FIRST_STORED_LEVEL) {
+            return;
+        }
+        // Bar i is drawn at x = i + 1; moving the view right brings older bars in
+        int firstBar = (int) Math.floor(-translateX / scaleX) - 1;
+        int lastBar = (int) Math.ceil((width - config.getyPad() - translateX) / scaleX) - 1;
+        int span = Math.max(1, lastBar - firstBar);
+        int from = moved < 0 ? firstBar : firstBar - span;
+        int to = moved > 0 ? lastBar : lastBar + span;
+        for (ChartWindow pane : panes) {
+            if (pane instanceof MainWindow) {
+                CandleData data = ((MainWindow) pane).getDataset().getData();
+                if (data instanceof PagedCandleSeries) {
+                    ((PagedCandleSeries) data).prefetch(from, to);
+                }
+            }
+        }
+    }
+
+    /**
+     * Re-applies the current view, fitting auto-scaled panes again. Called when the bars behind
+     * the panes change, e.g. while a dataset is still loading.
+     */
+    public void refreshView() {
+        scheduler.requestViewportUpdate();
+    }
+
+    private boolean isAutoScaled(ChartWindow pane) {
+        return config.isAutoScaleY() && !manualScaleY.contains(pane) && !(pane instanceof XAxis);
+    }
+
+    /**
+     * Fits the pane's vertical scale so the bars between the left edge and the price axis span
+     * its height, leaving the top margin free above and below. The range comes from the pane's
+     * own min/max index, so the cost does not depend on how many bars are visible.
+     */
+    private void autoFitPane(ChartWindow pane) {
+        int paneHeight = pane.getHeight();
+        if (paneHeight <= 0 || scaleX <= 0) return;
+
+        // Bar i is drawn at x = i + 1
+        int firstBar = (int) Math.floor(-translateX / scaleX) - 1;
+        int lastBar = (int) Math.ceil((width - config.getyPad() - translateX) / scaleX) - 1;
+        if (!pane.getValueRange(firstBar, lastBar, valueRange)) return;
+
+        double min = valueRange[0];
+        double max = valueRange[1];
+        if (max <= min) {
+            // Flat range: widen it a little so the bars sit in the middle of the pane
+            double span = Math.max(Math.abs(max) * 1e-3, 1e-9);
+            min -= span;
+            max += span;
+        }
+        double padding = Math.min(config.getMarginTop(), paneHeight / 4.0);
+        double yScale = (paneHeight - 2 * padding) / (max - min);
+
+        // Screen y of value v is height - translateY - v * scaleY; put max at the top padding
+        paneScaleY.put(pane, yScale);
+        paneTranslateY.put(pane, height - padding - yScale * max);
     }
 
     public void resetView() {
         scaleX = 20;
         translateX = 0;
+        manualScaleY.clear();
 
         // Reset all panes' Y-axis transforms
         panes.forEach(pane -> {
@@ -230,7 +355,24 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
             paneScaleY.put(pane, 14.0);
         });
 
-        updateAllPanels();
+        scheduler.requestViewportUpdate();
+    }
+
+    /**
+     * Scrolls the view, keeping the zoom, so bar {@code bar} sits in the middle of the plot.
+     */
+    public void centerOnBar(int bar) {
+        // Bar i is drawn at x = i + 1
+        translateX = (width - config.getyPad()) / 2 - (bar + 1) * scaleX;
+        scheduler.requestViewportUpdate();
+    }
+
+    /**
+     * The bar in the middle of the plot, the inverse of {@link #centerOnBar(int)}; it may lie
+     * outside the history.
+     */
+    public int getCenterBar() {
+        return (int) Math.round(((width - config.getyPad()) / 2 - translateX) / scaleX) - 1;
     }
 
     private void updateTransform() {
@@ -291,7 +433,7 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
         this.width = width;
         this.height = height;
         updateTransform();
-        updateAllPanels();
+        scheduler.requestViewportUpdate();
 
         System.out.println("Size");
     }
@@ -320,7 +462,7 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
 
         paneTranslateY.put(p, 0.0);
         paneScaleY.put(p, 19.0);
-        updateAllPanels();
+        scheduler.requestViewportUpdate();
 
 
     }
@@ -334,8 +476,9 @@ public class ChartMouseHandler extends MouseAdapter implements MouseMotionListen
 
         paneTranslateY.remove(p);
         paneScaleY.remove(p);
+        manualScaleY.remove(p);
 
-        updateAllPanels();
+        scheduler.requestViewportUpdate();
     }
 
     public AffineTransform getTransform() {
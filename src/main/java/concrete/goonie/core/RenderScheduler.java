@@ -0,0 +1,109 @@
+package concrete.goonie.core;
+
+import javax.swing.*;
+
+/**
+ * Paces viewport updates of a {@link Chart} to the display frame rate.
+ * <p>
+ * Mouse and wheel events only record that the viewport changed; the scheduler applies the
+ * accumulated change at most once per frame interval, which hands every pane its new transform
+ * and lets Swing paint all of them in one pass. Events arriving while a frame is already
+ * pending are folded into it. All methods must be called on the event dispatch thread.
+ */
+public class RenderScheduler {
+    public static final int DEFAULT_FRAME_INTERVAL_MS = 16;
+
+    private final int frameInterval;
+    private final Timer timer;
+    private Runnable viewportUpdate = () -> {
+    };
+
+    private boolean framePending;
+    private long lastFrameTime;
+    private long framesRendered;
+    private long eventsCoalesced;
+    private long updatesRequested;
+
+    public RenderScheduler() {
+        this(DEFAULT_FRAME_INTERVAL_MS);
+    }
+
+    public RenderScheduler(int frameIntervalMillis) {
+        this.frameInterval = frameIntervalMillis;
+        this.timer = new Timer(frameIntervalMillis, e -> flush());
+        timer.setRepeats(false);
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Sets the task that pushes the current viewport to the panes; run once per frame.
+     */
+    public void setViewportUpdate(Runnable viewportUpdate) {
+        this.viewportUpdate = viewportUpdate;
+    }
+
+    /**
+     * Records that the viewport changed. The change is applied on the next frame; if one is
+     * already pending the request is coalesced into it.
+     */
+    public void requestViewportUpdate() {
+        updatesRequested++;
+        if (framePending) {
+            eventsCoalesced++;
+            return;
+        }
+        framePending = true;
+
+        // Keep a fixed cadence: an idle chart reacts at once, a busy one once per interval
+        long sinceLastFrame = System.currentTimeMillis() - lastFrameTime;
+        timer.setInitialDelay((int) Math.max(0, frameInterval - sinceLastFrame));
+        timer.restart();
+    }
+
+    /**
+     * Applies a pending viewport change right away instead of waiting for the next frame.
+     */
+    public void flush() {
+        timer.stop();
+        if (!framePending) {
+            return;
+        }
+        framePending = false;
+        lastFrameTime = System.currentTimeMillis();
+        framesRendered++;
+        viewportUpdate.run();
+    }
+
+    public boolean isFramePending() {
+        return framePending;
+    }
+
+    /**
+     * Number of frames that applied a viewport change.
+     */
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    /**
+     * Number of requests folded into a frame that was already pending.
+     */
+    public long getEventsCoalesced() {
+        return eventsCoalesced;
+    }
+
+    public long getUpdatesRequested() {
+        return updatesRequested;
+    }
+
+    public void dispose() {
+        timer.stop();
+        framePending = false;
+    }
+
+    @Override
+    public String toString() {
+        return "RenderScheduler{frames=" + framesRendered + ", coalesced=" + eventsCoalesced
+                + ", requested=" + updatesRequested + '}';
+    }
+}
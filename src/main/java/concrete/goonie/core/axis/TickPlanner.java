@@ -0,0 +1,289 @@
+package concrete.goonie.core.axis;
+
+import concrete.goonie.ChartConfig;
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.TimeIndex;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoField;
+import java.util.Arrays;
+
+import static concrete.goonie.core.axis.Axis.MONTH_ABBREV;
+
+/**
+ * Plans the time axis of one chart: where the vertical grid lines and time ticks go, and the
+ * text and font of every label.
+ * <p>
+ * All panes of a chart share the horizontal mapping, so they share one planner: the first pane
+ * painted after the view changed computes the {@link Ticks}, and the other panes and the time
+ * axis reuse them. The grid spacing follows the previous plan of the same planner so it does not
+ * jump while zooming; unlike a JVM-wide setting, that keeps charts from influencing each other.
+ * Labels show the real time of the bar at the tick, looked up in the dataset's
+ * {@link TimeIndex}, so gaps in the history such as weekends do not shift them; past either
+ * end of the history, bars are taken to be one timeframe apart. Without a dataset, or before its
+ * first bar has loaded, bars are counted from {@link ChartConfig#getStartDateTime()}. Labels
+ * are kept by grid index, so panning only formats the labels that scroll into view.
+ * <p>
+ * {@link #plan} may be called from any thread; plans are immutable.
+ */
+public class TickPlanner {
+    public static final int LEVEL_YEAR = 0;
+    public static final int LEVEL_DAY = 1;
+    public static final int LEVEL_TIME = 2;
+
+    private static final int LABEL_SLOTS = 64;
+
+    private final ChartConfig config;
+    private final ENUM_TIMEFRAME timeframe;
+    private final Dataset dataset;
+    private final long barSeconds;
+    private final Font[] fonts;
+
+    private double lastSpacing = AxisUtils.DEFAULT_GRID_SPACING;
+    private Ticks ticks;
+    private double plannedScaleX, plannedTranslateX;
+    private int plannedWidth, plannedYPad;
+    private LocalDateTime plannedStart;
+    private long startSecond;
+    private TimeIndex timeIndex; // null while bars are counted from the start time
+    private int plannedBars;
+
+    // Labels by grid index, for the spacing and start of the last plan
+    private final long[] labelIndex = new long[LABEL_SLOTS];
+    private final String[] labelText = new String[LABEL_SLOTS];
+    private final byte[] labelLevel = new byte[LABEL_SLOTS];
+    private final char[] digits = new char[5];
+
+    public TickPlanner(ChartConfig config, ENUM_TIMEFRAME timeframe) {
+        this(config, timeframe, null);
+    }
+
+    /**
+     * Creates a planner that labels ticks with the bar times of {@code dataset}.
+     */
+    public TickPlanner(ChartConfig config, ENUM_TIMEFRAME timeframe, Dataset dataset) {
+        this.config = config;
+        this.timeframe = timeframe;
+        this.dataset = dataset;
+        this.barSeconds = timeframe.getDuration().getSeconds();
+        this.fonts = new Font[]{
+                ChartConfig.getFont(Font.BOLD, 15),
+                ChartConfig.getFont(Font.BOLD, 14),
+                ChartConfig.getFont(Font.PLAIN, 12)
+        };
+        Arrays.fill(labelIndex, Long.MIN_VALUE);
+    }
+
+    public ENUM_TIMEFRAME getTimeframe() {
+        return timeframe;
+    }
+
+    /**
+     * Returns the ticks for a pane {@code width} pixels wide whose transform maps bar
+     * positions to screen x as {@code transform} does. Only the x scale and translation of
+     * {@code transform} are used; panes and the time axis with the same mapping get the same
+     * plan back without recomputing it.
+     */
+    public synchronized Ticks plan(AffineTransform transform, int width) {
+        double scaleX = transform.getScaleX();
+        double translateX = transform.getTranslateX();
+        int yPad = config.getyPad();
+        LocalDateTime start = config.getStartDateTime();
+        TimeIndex index = dataset == null ? null : dataset.getTimeIndex();
+        int bars = index == null ? 0 : index.size();
+        if (bars == 0) {
+            index = null;
+        }
+        if (ticks != null && scaleX == plannedScaleX && translateX == plannedTranslateX
+                && width == plannedWidth && yPad == plannedYPad && start.equals(plannedStart)
+                && index == timeIndex && bars == plannedBars) {
+            return ticks;
+        }
+
+        // Labels past the last bar are extrapolated from it, so new bars invalidate them too
+        if (!start.equals(plannedStart) || index != timeIndex || bars != plannedBars) {
+            plannedStart = start;
+            startSecond = start.toEpochSecond(ZoneOffset.UTC);
+            timeIndex = index;
+            plannedBars = bars;
+            Arrays.fill(labelIndex, Long.MIN_VALUE);
+        }
+
+        double minX = (0 - translateX) / scaleX;
+        double maxX = (width - translateX) / scaleX;
+        if (minX > maxX) {
+            double swap = minX;
+            minX = maxX;
+            maxX = swap;
+        }
+        double spacing = AxisUtils.calculateOptimalGridSpacing(minX, maxX, width, timeframe, lastSpacing);
+        if (spacing != lastSpacing) {
+            Arrays.fill(labelIndex, Long.MIN_VALUE);
+        }
+        lastSpacing = spacing;
+
+        double firstGrid = Math.floor(minX / spacing) * spacing;
+        int gridCount = Math.max(0, (int) ((maxX - firstGrid) / spacing) + 2);
+        int[] x = new int[gridCount];
+        String[] labels = new String[gridCount];
+        byte[] levels = new byte[gridCount];
+        int count = 0;
+        for (int i = 0; i < gridCount; i++) {
+            double dataX = firstGrid + i * spacing;
+            double screenX = dataX * scaleX + translateX;
+            if (screenX < 0 || screenX > width - yPad) {
+                continue;
+            }
+            x[count] = (int) screenX;
+            if (count == 0) {
+                // The first label has nothing to its left and always shows the year
+                labels[count] = String.valueOf(dateTime(dataX).getYear());
+                levels[count] = LEVEL_YEAR;
+            } else {
+                long k = Math.round(dataX / spacing);
+                int slot = (int) Math.floorMod(k, (long) LABEL_SLOTS);
+                if (labelIndex[slot] != k) {
+                    label(slot, dataX, dataX - spacing);
+                    labelIndex[slot] = k;
+                }
+                labels[count] = labelText[slot];
+                levels[count] = labelLevel[slot];
+            }
+            count++;
+        }
+
+        ticks = new Ticks(spacing, count, x, labels, levels, fonts);
+        plannedScaleX = scaleX;
+        plannedTranslateX = translateX;
+        plannedWidth = width;
+        plannedYPad = yPad;
+        return ticks;
+    }
+
+    /**
+     * Time shown for the tick at {@code dataX}: that of bar {@code (long) dataX}, the bar the
+     * axis has always labelled the line with.
+     */
+    private LocalDateTime dateTime(double dataX) {
+        long bar = (long) dataX;
+        long second = timeIndex != null ? timeIndex.timeAt(bar) : startSecond + bar * barSeconds;
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    /**
+     * Fills label {@code slot} for the grid line at {@code dataX}, whose left neighbour is at
+     * {@code previousX}: the year, month or day where that changes, else the time of day.
+     */
+    private void label(int slot, double dataX, double previousX) {
+        LocalDateTime current = dateTime(dataX);
+        LocalDateTime previous = dateTime(previousX);
+        if (current.getYear() != previous.getYear()) {
+            labelText[slot] = String.valueOf(current.getYear());
+            labelLevel[slot] = LEVEL_YEAR;
+        } else if (current.getMonthValue() != previous.getMonthValue()) {
+            labelText[slot] = MONTH_ABBREV.get(current.getMonthValue());
+            labelLevel[slot] = LEVEL_DAY;
+        } else if (current.getDayOfMonth() != previous.getDayOfMonth()) {
+            labelText[slot] = String.valueOf(current.getDayOfMonth());
+            labelLevel[slot] = LEVEL_DAY;
+        } else {
+            labelText[slot] = timeLabel(current);
+            labelLevel[slot] = LEVEL_TIME;
+        }
+    }
+
+    private String timeLabel(LocalDateTime time) {
+        switch (timeframe) {
+            case PERIOD_M1:
+            case PERIOD_M5:
+            case PERIOD_M15:
+            case PERIOD_M30:
+                return clock(time.getHour(), time.getMinute());
+            case PERIOD_H1:
+            case PERIOD_H4:
+                return clock(time.getHour(), 0);
+            case PERIOD_D1:
+                return time.getDayOfMonth() + " " + MONTH_ABBREV.get(time.getMonthValue());
+            case PERIOD_W1:
+                return "W" + time.get(ChronoField.ALIGNED_WEEK_OF_YEAR);
+            case PERIOD_MN1:
+                return MONTH_ABBREV.get(time.getMonthValue()) + " '" + (time.getYear() % 100);
+            default:
+                return String.valueOf(time.getHour());
+        }
+    }
+
+    /**
+     * {@code hh:mm}, as {@code String.format("%02d:%02d", hour, minute)} prints it.
+     */
+    private String clock(int hour, int minute) {
+        digits[0] = (char) ('0' + hour / 10);
+        digits[1] = (char) ('0' + hour % 10);
+        digits[2] = ':';
+        digits[3] = (char) ('0' + minute / 10);
+        digits[4] = (char) ('0' + minute % 10);
+        return new String(digits);
+    }
+
+    /**
+     * The visible ticks of one view, left to right: screen x, label and label level.
+     */
+    public static final class Ticks {
+        private final double spacing;
+        private final int count;
+        private final int[] x;
+        private final String[] labels;
+        private final byte[] levels;
+        private final Font[] fonts;
+
+        private Ticks(double spacing, int count, int[] x, String[] labels, byte[] levels, Font[] fonts) {
+            this.spacing = spacing;
+            this.count = count;
+            this.x = x;
+            this.labels = labels;
+            this.levels = levels;
+            this.fonts = fonts;
+        }
+
+        /**
+         * Distance between ticks, in bars.
+         */
+        public double getSpacing() {
+            return spacing;
+        }
+
+        public int size() {
+            return count;
+        }
+
+        public int getX(int i) {
+            return x[i];
+        }
+
+        public String getLabel(int i) {
+            return labels[i];
+        }
+
+        /**
+         * {@link #LEVEL_YEAR}, {@link #LEVEL_DAY} or {@link #LEVEL_TIME}.
+         */
+        public int getLevel(int i) {
+            return levels[i];
+        }
+
+        public Font getFont(int i) {
+            return fonts[levels[i]];
+        }
+
+        /**
+         * Font of labels at {@code level}.
+         */
+        public Font getLevelFont(int level) {
+            return fonts[level];
+        }
+    }
+}
@@ -24,23 +24,24 @@ public class XAxis extends Axis {
 
     @Override
     protected void paintComponent(Graphics g) {
+        // Set on the pane's context so the cached layers and the corner button inherit it
+        ((Graphics2D) g).setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
         super.paintComponent(g);
+    }
 
-        Graphics2D g2d = (Graphics2D) g;
-        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
-
+    @Override
+    protected void paintGrid(Graphics2D g2d, int width, int height) {
         if (transform == null) {
             return;
         }
 
-        AxisUtils.drawXAxisLabels(g2d, transform, getWidth(), getHeight(),
-                config, config.getStartDateTime(), timeframe,
+        AxisUtils.drawXAxisLabels(g2d, tickPlanner.plan(transform, width), width, config,
                 AxisPosition.BOTTOM, 10);
 
         // Dynamically update button position and size
         int buttonWidth = config.getyPad();
-        int buttonHeight = getHeight();
-        int x = getWidth() - buttonWidth;
+        int buttonHeight = height;
+        int x = width - buttonWidth;
         cornerButton.setBounds(x, 0, buttonWidth, buttonHeight);
     }
 }
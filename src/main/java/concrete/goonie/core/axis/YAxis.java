@@ -2,11 +2,13 @@ package concrete.goonie.core.axis;
 
 import concrete.goonie.ChartConfig;
 import concrete.goonie.core.Renderer;
+import concrete.goonie.core.text.GlyphAtlas;
+import concrete.goonie.core.text.PriceFormatter;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
-import java.text.DecimalFormat;
+import java.util.Arrays;
 
 /**
  * The {@code YAxis} class is responsible for rendering the Y-axis of a chart,
@@ -15,9 +17,19 @@ import java.text.DecimalFormat;
  */
 public class YAxis implements Renderer {
 
+    private final Point2D.Double corner = new Point2D.Double();
     private Point2D topLeft = new Point2D.Double();
     private Point2D bottomRight = new Point2D.Double();
-    private DecimalFormat decimalFormat = new DecimalFormat("#0.0000");
+    private PriceFormatter formatter = new PriceFormatter(4);
+
+    // Labels of the current grid spacing, direct mapped by value index (value / gridSpacing).
+    // Visible labels have consecutive indices, so they never evict each other while panning.
+    private static final int LABEL_SLOTS = 64;
+    private final long[] labelIndex = new long[LABEL_SLOTS];
+    private final String[] labelText = new String[LABEL_SLOTS];
+    private final int[] labelWidth = new int[LABEL_SLOTS];
+    private double labelSpacing = Double.NaN;
+    private Font labelFont;
 
     private double effectiveMin;
     private double effectiveMax;
@@ -26,6 +38,12 @@ public class YAxis implements Renderer {
     private double startGrid;
     private double getRange = -1;
 
+    // Grid laid out by layout(), in screen coordinates
+    private int[] gridLineY = new int[16];
+    private int gridLineCount;
+    private int gridLineEnd;
+    private int axisX;
+
     // Changed to be based on pixel density rather than fixed counts
     private int minGridLines = 3;  // Minimum lines regardless of height
     private int pixelsPerGridLine = 50;  // Aim for one grid line every 50 pixels
@@ -51,11 +69,101 @@ public class YAxis implements Renderer {
      */
 
     public double draw(Graphics2D g2d, AffineTransform transform, int width, int height) {
-        drawAxisLines(g2d, transform, width, height);
+        layout(transform, width, height);
+        drawAxisLines(g2d, width, height);
         drawAxisLabels(g2d, transform, width, height);
         return gridSpacing;
     }
 
+    /**
+     * Computes the grid for the current transform without drawing anything, and reserves the
+     * axis strip through {@link ChartConfig#setyPad(int)}. The screen positions are then
+     * available from {@link #getGridLineY(int)} until the next call.
+     *
+     * @param transform the current chart transformation
+     * @param width     the chart width
+     * @param height    the chart height
+     */
+    public void layout(AffineTransform transform, int width, int height) {
+        axisX = (position == AxisPosition.RIGHT) ? width - maxLabelWidth - (config.getMarginRight()) : 0;
+        gridLineEnd = width - config.getyPad();
+
+        try {
+            corner.setLocation(0, 0);
+            transform.inverseTransform(corner, topLeft);
+            corner.setLocation(0, height);
+            transform.inverseTransform(corner, bottomRight);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+
+        effectiveMin = Math.min(topLeft.getY(), bottomRight.getY());
+        effectiveMax = Math.max(topLeft.getY(), bottomRight.getY());
+        range = effectiveMax - effectiveMin;
+
+        // Calculate desired number of grid lines based on height
+        int desiredGridLines = Math.max(minGridLines, height / pixelsPerGridLine);
+
+        if (getRange == -1) {
+            // Calculate grid spacing based on desired number of lines
+            gridSpacing = calculateGridSpacing(range, desiredGridLines);
+        } else {
+            gridSpacing = getRange;
+        }
+
+        startGrid = Math.floor(effectiveMin / gridSpacing) * gridSpacing;
+
+        gridLineCount = 0;
+        for (double y = startGrid; y <= effectiveMax; y += gridSpacing) {
+            double screenY = screenY(transform, y);
+
+            if (screenY > 0 && screenY < height) {
+                if (gridLineCount == gridLineY.length) {
+                    gridLineY = Arrays.copyOf(gridLineY, gridLineCount * 2);
+                }
+                gridLineY[gridLineCount++] = (int) screenY;
+            }
+        }
+        config.setyPad(Math.abs(width - axisX));
+    }
+
+    public int getGridLineCount() {
+        return gridLineCount;
+    }
+
+    public int getGridLineY(int index) {
+        return gridLineY[index];
+    }
+
+    /**
+     * Right end of the horizontal grid lines, the plot edge as it was before {@link #layout}.
+     */
+    public int getGridLineEnd() {
+        return gridLineEnd;
+    }
+
+    /**
+     * Left edge of the strip the axis labels are drawn on.
+     */
+    public int getAxisX() {
+        return axisX;
+    }
+
+    /**
+     * Width of the widest label drawn last, which sizes the axis strip on the next layout.
+     */
+    public int getMaxLabelWidth() {
+        return maxLabelWidth;
+    }
+
+    public int getTickLength() {
+        return tickLength;
+    }
+
+    public AxisPosition getPosition() {
+        return position;
+    }
+
     /**
      * Draws the value labels on the Y-axis.
      *
@@ -64,17 +172,23 @@ public class YAxis implements Renderer {
      * @param width     the chart width
      * @param height    the chart height
      */
-    private void drawAxisLabels(Graphics2D g2d, AffineTransform transform, int width, int height) {
+    public void drawAxisLabels(Graphics2D g2d, AffineTransform transform, int width, int height) {
         g2d.setFont(config.getTextFont());
         g2d.setColor(config.getTextColor());
+        FontMetrics fm = g2d.getFontMetrics();
+        GlyphAtlas atlas = GlyphAtlas.forGraphics(g2d, config.getTextFont(), config.getTextColor());
+        if (gridSpacing != labelSpacing || config.getTextFont() != labelFont) {
+            Arrays.fill(labelText, null);
+            labelSpacing = gridSpacing;
+            labelFont = config.getTextFont();
+        }
 
         // First pass to compute max label width
         maxLabelWidth = 0;
         for (double y = startGrid; y <= effectiveMax; y += gridSpacing) {
-            String label = decimalFormat.format(y).replace(',', '.');
-            int labelWidth = g2d.getFontMetrics().stringWidth(label);
-            if (labelWidth > maxLabelWidth) {
-                maxLabelWidth = labelWidth;
+            int slot = labelSlot(y, fm, atlas);
+            if (labelWidth[slot] > maxLabelWidth) {
+                maxLabelWidth = labelWidth[slot];
             }
         }
         maxLabelWidth += 5;
@@ -84,81 +198,72 @@ public class YAxis implements Renderer {
 
         // Second pass to draw labels
         for (double y = startGrid; y <= effectiveMax; y += gridSpacing) {
-            Point2D pt = new Point2D.Double(0, y);
-            transform.transform(pt, pt);
-            double screenY = pt.getY();
+            double screenY = screenY(transform, y);
 
             if (screenY > 0 && screenY < height) {
-                String label = decimalFormat.format(y).replace(',', '.');
-                FontMetrics fm = g2d.getFontMetrics();
+                int slot = labelSlot(y, fm, atlas);
                 int labelY = (int) screenY + fm.getAscent() / 4;
 
+                int labelLeft = labelX;
                 if (position == AxisPosition.RIGHT) {
-                    int labelWidth = fm.stringWidth(label);
-                    g2d.drawString(label, labelX + (maxLabelWidth - labelWidth)-(config.getMarginRight()/3), labelY);
+                    labelLeft = labelX + (maxLabelWidth - labelWidth[slot]) - (config.getMarginRight() / 3);
+                }
+                if (atlas != null) {
+                    atlas.drawString(g2d, labelText[slot], labelLeft, labelY);
                 } else {
-                    g2d.drawString(label, labelX, labelY);
+                    g2d.drawString(labelText[slot], labelLeft, labelY);
                 }
             }
         }
     }
 
     /**
-     * Draws axis line and horizontal grid lines for the Y-axis.
-     *
-     * @param g2d       the graphics context
-     * @param transform the current chart transformation
-     * @param width     the chart width
-     * @param height    the chart height
+     * Returns the cache slot holding the label and width of grid value {@code y}, formatting
+     * and measuring it only if it is not cached yet.
      */
-    private void drawAxisLines(Graphics2D g2d, AffineTransform transform, int width, int height) {
-        int axisX = (position == AxisPosition.RIGHT) ? width - maxLabelWidth-(config.getMarginRight()) : 0;
-
-        g2d.drawLine(axisX, 0, axisX, height);
-
-        try {
-            topLeft = transform.inverseTransform(new Point2D.Double(0, 0), null);
-            bottomRight = transform.inverseTransform(new Point2D.Double(0, height), null);
-        } catch (Exception e) {
-            e.printStackTrace();
+    private int labelSlot(double y, FontMetrics fm, GlyphAtlas atlas) {
+        long index = Math.round(y / gridSpacing);
+        int slot = (int) (index & (LABEL_SLOTS - 1));
+        if (labelText[slot] == null || labelIndex[slot] != index) {
+            String label = formatter.format(y);
+            labelIndex[slot] = index;
+            labelText[slot] = label;
+            labelWidth[slot] = atlas != null ? atlas.stringWidth(label, fm) : fm.stringWidth(label);
         }
+        return slot;
+    }
 
-        effectiveMin = Math.min(topLeft.getY(), bottomRight.getY());
-        effectiveMax = Math.max(topLeft.getY(), bottomRight.getY());
-        range = effectiveMax - effectiveMin;
-
-        // Calculate desired number of grid lines based on height
-        int desiredGridLines = Math.max(minGridLines, height / pixelsPerGridLine);
-
-        if (getRange == -1) {
-            // Calculate grid spacing based on desired number of lines
-            gridSpacing = calculateGridSpacing(range, desiredGridLines);
-        } else {
-            gridSpacing = getRange;
-        }
+    /**
+     * Screen y of value {@code y} on the axis; the same as transforming {@code (0, y)}.
+     */
+    private static double screenY(AffineTransform transform, double y) {
+        return y * transform.getScaleY() + transform.getTranslateY();
+    }
 
-        startGrid = Math.floor(effectiveMin / gridSpacing) * gridSpacing;
+    /**
+     * Draws axis line and horizontal grid lines for the Y-axis, as laid out by {@link #layout}.
+     *
+     * @param g2d    the graphics context
+     * @param width  the chart width
+     * @param height the chart height
+     */
+    private void drawAxisLines(Graphics2D g2d, int width, int height) {
+        g2d.drawLine(axisX, 0, axisX, height);
 
         g2d.setColor(config.getGridColor());
 
-        for (double y = startGrid; y <= effectiveMax; y += gridSpacing) {
-            Point2D pt = new Point2D.Double(0, y);
-            transform.transform(pt, pt);
-            double screenY = pt.getY();
-
-            if (screenY > 0 && screenY < height ) {
-                g2d.drawLine(0, (int) screenY, width-config.getyPad(), (int) screenY);
+        for (int i = 0; i < gridLineCount; i++) {
+            int screenY = gridLineY[i];
+            g2d.drawLine(0, screenY, gridLineEnd, screenY);
 
-                if (position == AxisPosition.RIGHT) {
-                    g2d.drawLine(width - tickLength, (int) screenY, width, (int) screenY);
-                } else {
-                    g2d.drawLine(width, (int) screenY, width + tickLength, (int) screenY);
-                }
+            if (position == AxisPosition.RIGHT) {
+                g2d.drawLine(width - tickLength, screenY, width, screenY);
+            } else {
+                g2d.drawLine(width, screenY, width + tickLength, screenY);
             }
         }
         g2d.setColor(config.getBackgroundColor());
         g2d.fillRect(axisX,0,Math.abs(width-axisX)-tickLength,height);
-        config.setyPad(Math.abs(width-axisX));
     }
 
     /**
@@ -233,11 +338,8 @@ public class YAxis implements Renderer {
      * @param places the number of decimal digits
      */
     public void setDecimalPlaces(int places) {
-        StringBuilder pattern = new StringBuilder("#0.");
-        for (int i = 0; i < places; i++) {
-            pattern.append("0");
-        }
-        decimalFormat = new DecimalFormat(pattern.toString());
+        formatter = new PriceFormatter(places);
+        Arrays.fill(labelText, null);
     }
 
 
@@ -0,0 +1,144 @@
+package concrete.goonie.core.chartlayers;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A {@link PaneLayer} counterpart that is painted on a pool thread instead of the EDT, used for
+ * the grid and data layers together when {@link concrete.goonie.ChartConfig#isParallelRendering()}
+ * is on.
+ * <p>
+ * A frame is painted into a private {@link BufferedImage} for one viewport: the grid on the EDT
+ * when the frame starts, then the data on a pool thread from a snapshot taken on the EDT right
+ * after, of the bars and of everything else the painting reads. The frame is handed back to
+ * the EDT when it is complete, and the EDT only ever draws the last completed frame, so the
+ * candles are never shown against the grid and price axis of another view, panes of a chart
+ * paint side by side and a frame never shows half drawn. At most one frame per layer is in
+ * flight: an invalidation that arrives meanwhile is picked up by the next frame, started once
+ * the current one has been published.
+ */
+final class AsyncPaneLayer {
+    /**
+     * Shared by all panes of all charts. Pane jobs are independent, so a work-stealing pool keeps
+     * every core busy until the slowest pane is done.
+     */
+    private static final ForkJoinPool POOL = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Sets up the frames of the layer.
+     */
+    interface Painter {
+        /**
+         * Called on the EDT when a frame starts. Paints the grid of the frame into {@code g2d},
+         * takes a snapshot of what painting its data reads and returns that painting, to run
+         * on a pool thread.
+         */
+        ChartWindow.DataFrame prepare(Graphics2D g2d, AffineTransform viewport, int width, int height);
+    }
+
+    private final Component pane;
+    private final Painter painter;
+    private volatile boolean dirty = true;
+
+    // Owned by the EDT
+    private BufferedImage front; // Last completed frame
+    private BufferedImage spare; // Previous frame, recycled for the next one
+    private boolean inFlight;
+
+    AsyncPaneLayer(Component pane, Painter painter) {
+        this.pane = pane;
+        this.painter = painter;
+    }
+
+    /**
+     * Marks the layer for repainting on the next paint of the pane. Safe from any thread.
+     */
+    void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Starts painting a new frame of {@code width} by {@code height} for {@code viewport} if
+     * the layer is out of date and no frame is in flight. Must be called on the EDT.
+     */
+    void update(Graphics target, AffineTransform viewport, int width, int height) {
+        if (front == null || front.getWidth() != width || front.getHeight() != height) {
+            dirty = true;
+        }
+        if (!dirty || inFlight || viewport == null) {
+            return;
+        }
+        dirty = false;
+        inFlight = true;
+
+        RenderingHints hints = target instanceof Graphics2D ? ((Graphics2D) target).getRenderingHints() : null;
+        BufferedImage image = spare != null && spare.getWidth() == width && spare.getHeight() == height
+                ? spare : new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        spare = null;
+
+        ChartWindow.DataFrame frame;
+        Graphics2D grid = image.createGraphics();
+        try {
+            if (hints != null) {
+                grid.setRenderingHints(hints);
+            }
+            frame = painter.prepare(grid, new AffineTransform(viewport), width, height);
+        } catch (RuntimeException | Error e) {
+            inFlight = false;
+            dirty = true;
+            throw e;
+        } finally {
+            grid.dispose();
+        }
+
+        POOL.execute(() -> {
+            Graphics2D g2d = image.createGraphics();
+            try {
+                if (hints != null) {
+                    g2d.setRenderingHints(hints);
+                }
+                frame.paint(g2d);
+            } catch (RuntimeException | Error e) {
+                SwingUtilities.invokeLater(() -> fail(image, e));
+                return;
+            } finally {
+                g2d.dispose();
+            }
+            SwingUtilities.invokeLater(() -> publish(image));
+        });
+    }
+
+    private void publish(BufferedImage image) {
+        inFlight = false;
+        spare = front;
+        front = image;
+        pane.repaint(); // Shows the frame, and starts the next one if it is already stale
+    }
+
+    /**
+     * Drops a frame whose painting threw and reports the failure on the EDT, where it reaches
+     * the EDT's uncaught exception handler like any other painting error. The layer stays
+     * dirty, so the next repaint of the pane tries again.
+     */
+    private void fail(BufferedImage image, Throwable failure) {
+        inFlight = false;
+        spare = image;
+        dirty = true;
+        if (failure instanceof Error) {
+            throw (Error) failure;
+        }
+        throw (RuntimeException) failure;
+    }
+
+    /**
+     * Draws the last completed frame at the pane's origin.
+     */
+    void drawTo(Graphics g) {
+        if (front != null) {
+            g.drawImage(front, 0, 0, null);
+        }
+    }
+}
@@ -3,33 +3,429 @@ package concrete.goonie.core.chartlayers;
 import concrete.goonie.ChartConfig;
 import concrete.goonie.core.Renderer;
 import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.axis.TickPlanner;
 import concrete.goonie.core.axis.YAxis;
+import concrete.goonie.core.data.Dataset;
 
 import javax.swing.*;
+import java.awt.*;
 import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
 
 
+/**
+ * Base class of every pane in a chart.
+ * <p>
+ * A pane paints into three cached layers: the grid layer (background, grid, axis labels), the
+ * data layer (candles and anything plotted from the dataset) and a translucent overlay layer
+ * (crosshair). Subclasses draw them in {@link #paintGrid}, {@link #paintData} and
+ * {@link #paintOverlay}; each layer is only redrawn after it was invalidated, so a repaint for
+ * the crosshair or for a child component composites the cached images and nothing else.
+ * <p>
+ * A transform that only moves the view by whole pixels along the time axis is a scroll: the
+ * data layer is shifted in place and only the uncovered columns, plus the columns next to the
+ * price axis where bars are culled, are painted again.
+ * <p>
+ * With {@link ChartConfig#isParallelRendering()} on, panes whose data layer does not touch
+ * shared state ({@link #canPaintDataInParallel()}) paint it on a pool thread from a snapshot
+ * taken by {@link #prepareDataFrame}. The grid is then painted into the same frame, on the EDT
+ * and for the same viewport, and the EDT composites the last completed frame, so the candles
+ * always match the grid and price axis they are shown with.
+ */
 public abstract class ChartWindow extends JPanel implements Renderer {
+    /**
+     * Bound property fired when painting the pane changed the width reserved for the price
+     * axis, so panes laid out against it (the time axis) can redraw their cached layers.
+     */
+    public static final String AXIS_WIDTH_PROPERTY = "axisWidth";
+
+    /**
+     * One frame of the data layer, painted on a pool thread; see {@link #prepareDataFrame}.
+     */
+    @FunctionalInterface
+    protected interface DataFrame {
+        void paint(Graphics2D g2d);
+    }
+
     protected ChartConfig config;
     protected ENUM_TIMEFRAME timeframe;
     protected AffineTransform transform;
+    protected TickPlanner tickPlanner;
     protected boolean selected;
 
     protected double chartHeight;
     protected double chartWidth;
     private final YAxis yAxis;
 
+    private final PaneLayer gridLayer = new PaneLayer(true);
+    private final PaneLayer dataLayer = new PaneLayer(false);
+    private final PaneLayer overlayLayer = new PaneLayer(false);
+    private final AsyncPaneLayer asyncDataLayer = new AsyncPaneLayer(this, this::prepareFrame);
+    protected int crosshairX = -1;
+    protected int crosshairY = -1;
+    private boolean painting;
+    private boolean invalidatedWhilePainting;
+    private final AffineTransform scrollReference = new AffineTransform();
+    private boolean hasScrollReference;
+    private int pendingScroll;
+    private final Object pendingBarsLock = new Object();
+    private int pendingFirstBar = Integer.MAX_VALUE; // Bars to repaint, guarded by pendingBarsLock
+    private int pendingLastBar = -1;
+
+    /**
+     * Redraws the data layer whenever the pane's dataset publishes more bars. It runs on the
+     * loading thread; {@link #repaint()} is coalesced by Swing on the EDT.
+     */
+    protected final Dataset.DatasetListener repaintOnLoad = new Dataset.DatasetListener() {
+        @Override
+        public void onProgress(Dataset dataset, double progress) {
+            overlayLayer.invalidate();
+            invalidateData();
+        }
+
+        @Override
+        public void onLoaded(Dataset dataset) {
+            overlayLayer.invalidate();
+            invalidateData();
+        }
+
+        @Override
+        public void onFailed(Dataset dataset, Throwable cause) {
+            overlayLayer.invalidate();
+            invalidateData();
+        }
+
+    };
+
     public ChartWindow(ENUM_TIMEFRAME timeframe, ChartConfig config) {
         this.timeframe = timeframe;
         this.config = config;
         this.yAxis = new YAxis(config);
+        this.tickPlanner = new TickPlanner(config, timeframe);
+    }
+
+    /**
+     * Places the time grid with {@code tickPlanner}, so panes of one chart share a single
+     * plan per view instead of each working out its own. The pane takes on the planner's
+     * timeframe.
+     */
+    public void setTickPlanner(TickPlanner tickPlanner) {
+        this.tickPlanner = tickPlanner;
+        this.timeframe = tickPlanner.getTimeframe();
+        invalidateLayers();
+    }
+
+    public TickPlanner getTickPlanner() {
+        return tickPlanner;
     }
 
     public void setTransform(AffineTransform transform) {
-        this.transform = transform;
+        if (transform == null) {
+            this.transform = null;
+            hasScrollReference = false;
+            invalidateLayers();
+            return;
+        }
+
+        // Copied, so callers may keep reusing the transform they pass in
+        if (this.transform == null) {
+            this.transform = new AffineTransform(transform);
+        } else {
+            this.transform.setTransform(transform);
+        }
+
+        int dx = hasScrollReference ? scrollDistance(scrollReference, transform) : Integer.MIN_VALUE;
+        scrollReference.setTransform(transform);
+        hasScrollReference = true;
+        if (dx == 0) {
+            return; // Same view
+        }
+        if (dx != Integer.MIN_VALUE && !painting) {
+            pendingScroll += dx;
+            gridLayer.invalidate();
+            asyncDataLayer.invalidate();
+            repaint();
+        } else {
+            invalidateLayers();
+        }
+    }
+
+    /**
+     * Returns how many whole pixels {@code current} moves the view right of {@code previous},
+     * or {@link Integer#MIN_VALUE} if it does anything other than such a move.
+     */
+    private static int scrollDistance(AffineTransform previous, AffineTransform current) {
+        if (previous.getScaleX() != current.getScaleX() || previous.getScaleY() != current.getScaleY()
+                || previous.getShearX() != current.getShearX() || previous.getShearY() != current.getShearY()
+                || previous.getTranslateY() != current.getTranslateY()) {
+            return Integer.MIN_VALUE;
+        }
+        double shift = current.getTranslateX() - previous.getTranslateX();
+        long pixels = Math.round(shift);
+        if (Math.abs(shift - pixels) > 1e-9 || Math.abs(pixels) > Short.MAX_VALUE) {
+            return Integer.MIN_VALUE;
+        }
+        return (int) pixels;
+    }
+
+    /**
+     * Redraws the grid and data layers on the next paint. Called while the pane is painting,
+     * e.g. because the axis strip changed width, it takes effect once the current frame is done.
+     */
+    public void invalidateLayers() {
+        if (painting) {
+            invalidatedWhilePainting = true;
+            return;
+        }
+        gridLayer.invalidate();
+        dataLayer.invalidate();
+        asyncDataLayer.invalidate();
+        repaint();
+    }
+
+    /**
+     * Redraws the data layer on the next paint, keeping the grid.
+     */
+    public void invalidateData() {
+        dataLayer.invalidate();
+        asyncDataLayer.invalidate();
+        repaint();
+    }
+
+    /**
+     * Redraws only the columns of the data layer showing bars {@code firstBar..lastBar}, e.g.
+     * the forming bar of a live feed, which a {@link concrete.goonie.core.BarUpdateConflator}
+     * reports once per frame. Safe from any thread; requests made before the next paint are
+     * merged.
+     */
+    public void invalidateBars(int firstBar, int lastBar) {
+        synchronized (pendingBarsLock) {
+            pendingFirstBar = Math.min(pendingFirstBar, firstBar);
+            pendingLastBar = Math.max(pendingLastBar, lastBar);
+        }
+        asyncDataLayer.invalidate();
         repaint();
     }
 
+    /**
+     * Moves the crosshair to pane coordinates {@code (x, y)}; {@code -1} hides that line. Only
+     * the overlay layer is redrawn.
+     */
+    public void setCrosshair(int x, int y) {
+        if (x == crosshairX && y == crosshairY) {
+            return;
+        }
+        crosshairX = x;
+        crosshairY = y;
+        overlayLayer.invalidate();
+        repaint();
+    }
+
+    public void clearCrosshair() {
+        setCrosshair(-1, -1);
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        int axisWidth = config.getyPad();
+        int scroll = pendingScroll;
+        pendingScroll = 0;
+        int firstBar, lastBar;
+        synchronized (pendingBarsLock) {
+            firstBar = pendingFirstBar;
+            lastBar = pendingLastBar;
+            pendingFirstBar = Integer.MAX_VALUE;
+            pendingLastBar = -1;
+        }
+        // A print needs the finished frame now, so it always paints on the calling thread
+        boolean parallel = config.isParallelRendering() && canPaintDataInParallel() && !isPaintingForPrint();
+        painting = true;
+        try {
+            Graphics2D layer;
+            if (parallel) {
+                // The frame brings its own grid; the cached layers missed this change and are
+                // repainted whole if parallel goes off
+                gridLayer.invalidate();
+                dataLayer.invalidate();
+                asyncDataLayer.update(g, transform, width, height);
+            } else {
+                layer = gridLayer.beginPaint(this, g, width, height);
+                if (layer != null) {
+                    paintGridLayer(layer, width, height);
+                    layer.dispose();
+                }
+                if (config.getyPad() != axisWidth) {
+                    dataLayer.invalidate(); // Bars are culled at the price axis, which just moved
+                }
+                if (scroll != 0 && dataLayer.scroll(this, scroll, width, height)) {
+                    paintScrolledData(g, scroll, width, height);
+                    if (firstBar <= lastBar) {
+                        paintBars(g, firstBar, lastBar, width, height);
+                    }
+                } else if (firstBar <= lastBar && transform != null && dataLayer.isIntact(this, width, height)) {
+                    paintBars(g, firstBar, lastBar, width, height);
+                } else {
+                    layer = dataLayer.beginPaint(this, g, width, height);
+                    if (layer != null) {
+                        paintData(layer, transform, width, height);
+                        layer.dispose();
+                    }
+                }
+            }
+            layer = overlayLayer.beginPaint(this, g, width, height);
+            if (layer != null) {
+                paintOverlay(layer, width, height);
+                layer.dispose();
+            }
+        } finally {
+            painting = false;
+        }
+
+        boolean intact = true;
+        if (parallel) {
+            asyncDataLayer.drawTo(g);
+        } else {
+            intact = gridLayer.drawTo(g) & dataLayer.drawTo(g);
+        }
+        intact &= overlayLayer.drawTo(g);
+        if (!intact) {
+            repaint();
+        }
+        if (invalidatedWhilePainting) {
+            invalidatedWhilePainting = false;
+            invalidateLayers();
+        }
+        if (config.getyPad() != axisWidth) {
+            firePropertyChange(AXIS_WIDTH_PROPERTY, axisWidth, config.getyPad());
+        }
+    }
+
+    private void paintGridLayer(Graphics2D g2d, int width, int height) {
+        g2d.setColor(getBackground());
+        g2d.fillRect(0, 0, width, height);
+        paintGrid(g2d, width, height);
+    }
+
+    // Starts a parallel frame on the EDT: its grid now, its data from a snapshot taken after the
+    // grid, which may have resized the price axis strip the data is culled at
+    private DataFrame prepareFrame(Graphics2D g2d, AffineTransform viewport, int width, int height) {
+        paintGridLayer(g2d, width, height);
+        return prepareDataFrame(viewport, width, height);
+    }
+
+    /**
+     * Repaints the columns of the data layer that a scroll of {@code dx} pixels left stale: the
+     * strip scrolled into view and the strip by the price axis, where bars that were culled at
+     * the old position may now reach the plot.
+     */
+    private void paintScrolledData(Graphics g, int dx, int width, int height) {
+        int barWidth = transform == null ? 0 : (int) Math.ceil(Math.abs(transform.getScaleX()));
+        int axisStrip = Math.max(0, width - config.getyPad() - config.getMarginRight() - barWidth + Math.min(dx, 0));
+        int from = axisStrip;
+        if (dx >= axisStrip) {
+            from = 0;
+        } else if (dx > 0) {
+            Graphics2D layer = dataLayer.beginPaintColumns(g, 0, dx, height);
+            paintData(layer, transform, width, height);
+            layer.dispose();
+        }
+        Graphics2D layer = dataLayer.beginPaintColumns(g, from, width - from, height);
+        paintData(layer, transform, width, height);
+        layer.dispose();
+    }
+
+    /**
+     * Repaints the columns of the data layer that bars {@code firstBar..lastBar} can reach. Bar
+     * {@code i} is centred on {@code x = i + 1}; the margin covers its body and, when zoomed
+     * out, the aggregated entry the bar is drawn as.
+     */
+    private void paintBars(Graphics g, int firstBar, int lastBar, int width, int height) {
+        double scaleX = transform.getScaleX();
+        double translateX = transform.getTranslateX();
+        int margin = (int) Math.ceil(Math.abs(scaleX)) + 2;
+        double left = (firstBar + 1) * scaleX + translateX - margin;
+        double right = (lastBar + 1) * scaleX + translateX + margin;
+        int from = (int) Math.max(0, Math.floor(left));
+        int to = (int) Math.min(width, Math.ceil(right) + 1);
+        if (from >= to) {
+            return; // Off screen
+        }
+        Graphics2D layer = dataLayer.beginPaintColumns(g, from, to - from, height);
+        paintData(layer, transform, width, height);
+        layer.dispose();
+    }
+
+    /**
+     * Paints the grid layer, already filled with the background. Redrawn when the transform or
+     * the size changes.
+     */
+    protected void paintGrid(Graphics2D g2d, int width, int height) {
+    }
+
+    /**
+     * Paints the data layer over the grid for the view {@code viewport}, on the EDT. Redrawn
+     * when the transform or the size changes and after {@link #invalidateData()}.
+     */
+    protected void paintData(Graphics2D g2d, AffineTransform viewport, int width, int height) {
+    }
+
+    /**
+     * Whether the data layer may be painted off the EDT, through {@link #prepareDataFrame}, when
+     * parallel rendering is on. Panes that change shared state while painting their data (axis
+     * layout, the config) must return {@code false}, which is the default.
+     */
+    protected boolean canPaintDataInParallel() {
+        return false;
+    }
+
+    /**
+     * Takes, on the EDT, a snapshot of what painting the data layer for {@code viewport} reads,
+     * the bars included, and returns a frame that paints it from those copies on a pool thread.
+     * The frame must not share mutable state with {@link #paintData}, which can run on the EDT
+     * meanwhile, e.g. to print the pane.
+     * <p>
+     * The default paints the data with {@link #paintData} right away, on the EDT, and returns a
+     * frame that only copies the result. Panes that allow {@link #canPaintDataInParallel()}
+     * override it to move the painting itself off the EDT.
+     *
+     * @param viewport a copy the frame may keep
+     */
+    protected DataFrame prepareDataFrame(AffineTransform viewport, int width, int height) {
+        BufferedImage painted = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = painted.createGraphics();
+        try {
+            paintData(g2d, viewport, width, height);
+        } finally {
+            g2d.dispose();
+        }
+        return frame -> frame.drawImage(painted, 0, 0, null);
+    }
+
+    /**
+     * Paints the overlay layer on top of everything else; by default the crosshair.
+     */
+    protected void paintOverlay(Graphics2D g2d, int width, int height) {
+        if (!config.isShowCrosshair() || crosshairX < 0) {
+            return;
+        }
+        int plotWidth = width - config.getyPad();
+        g2d.setColor(config.getCrosshairColor());
+        g2d.setStroke(config.getCrosshairStroke());
+        if (crosshairX <= plotWidth) {
+            g2d.drawLine(crosshairX, 0, crosshairX, height);
+        }
+        if (crosshairY >= 0) {
+            g2d.drawLine(0, crosshairY, plotWidth, crosshairY);
+        }
+    }
+
     public AffineTransform getTransform() {
         return transform;
     }
@@ -55,4 +451,47 @@ public abstract class ChartWindow extends JPanel implements Renderer {
     public void hideGui() {
 
     }
+
+    /**
+     * Reports the range of values the pane plots over bars {@code firstBar..lastBar}, so the
+     * mouse handler can fit the pane's vertical scale to what is on screen. Panes showing
+     * candles or indicator series override this; the default has nothing to report.
+     *
+     * @param minMax receives the lowest value at index 0 and the highest at index 1
+     * @return {@code true} if {@code minMax} was filled
+     */
+    public boolean getValueRange(int firstBar, int lastBar, double[] minMax) {
+        return false;
+    }
+
+    /**
+     * Detaches the pane from shared resources before it is thrown away.
+     */
+    public void dispose() {
+
+    }
+
+    /**
+     * Draws a progress note in the middle of the pane while {@code dataset} is still loading,
+     * and an error note if it failed. Bars that are already loaded are painted regardless.
+     */
+    protected void drawLoadingState(Graphics2D g2d, Dataset dataset) {
+        String message;
+        switch (dataset.getState()) {
+            case LOADING:
+                message = "Loading " + dataset.getKey().symbol() + "," + dataset.getKey().timeframe()
+                        + "… " + Math.round(dataset.getProgress() * 100) + "%";
+                break;
+            case FAILED:
+                message = "Failed to load " + dataset.getKey().symbol() + "," + dataset.getKey().timeframe();
+                break;
+            default:
+                return;
+        }
+        g2d.setFont(config.getTextFont());
+        g2d.setColor(config.getTextColor());
+        FontMetrics fm = g2d.getFontMetrics();
+        int plotWidth = getWidth() - config.getyPad();
+        g2d.drawString(message, (plotWidth - fm.stringWidth(message)) / 2, getHeight() / 2);
+    }
 }
@@ -3,36 +3,117 @@ package concrete.goonie.core.chartlayers;
 import concrete.goonie.ChartConfig;
 
 import concrete.goonie.core.axis.AxisUtils;
+import concrete.goonie.core.axis.TickPlanner;
 import concrete.goonie.core.renderers.CandlestickRenderer;
+import concrete.goonie.core.renderers.RasterCandleRenderer;
 import concrete.goonie.core.ENUM_TIMEFRAME;
 import concrete.goonie.core.axis.YAxis;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.datatypes.CandleData;
 
 import java.awt.*;
+import java.awt.geom.AffineTransform;
 
 public class MainWindow extends ChartWindow {
     private final YAxis yAxis;
+    private Dataset dataset;
     private CandlestickRenderer candleRenderer;
+    private final CandlestickRenderer.Batch frameBatch = new CandlestickRenderer.Batch(); // For frames off the EDT
+    private RasterCandleRenderer rasterRenderer;
 
-    public MainWindow(ENUM_TIMEFRAME timeframe, ChartConfig config) {
+    public MainWindow(ENUM_TIMEFRAME timeframe, ChartConfig config, Dataset dataset) {
         super(timeframe, config);
         this.yAxis = new YAxis(config);
-        this.candleRenderer = new CandlestickRenderer(config);
+        this.dataset = dataset;
+        this.candleRenderer = new CandlestickRenderer(config, dataset);
+        this.rasterRenderer = new RasterCandleRenderer(config, dataset, yAxis, tickPlanner);
+        dataset.addListener(repaintOnLoad);
         setBackground(config.getBackgroundColor());
     }
 
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g); // Call parent's paintComponent first
+    public void setTickPlanner(TickPlanner tickPlanner) {
+        super.setTickPlanner(tickPlanner);
+        rasterRenderer.setTickPlanner(tickPlanner);
+    }
+
+    @Override
+    protected void paintGrid(Graphics2D g2d, int width, int height) {
+        if (config.getRenderBackend() == ChartConfig.RenderBackend.RASTER) {
+            return; // The raster renderer paints the grid into its own framebuffer
+        }
+        int labelWidth = yAxis.getMaxLabelWidth();
+        AxisUtils.drawGridLines(g2d, tickPlanner.plan(transform, width), height, config);
+        yAxis.draw(g2d, transform, width, height);
 
-        Graphics2D g2d = (Graphics2D) g;
-        if (transform == null) {
-            System.out.println("transform == null");
-            ;
+        // The axis strip is sized from the labels of the previous draw; settle it next frame
+        if (yAxis.getMaxLabelWidth() != labelWidth) {
+            invalidateLayers();
+        }
+    }
+
+    @Override
+    protected void paintData(Graphics2D g2d, AffineTransform viewport, int width, int height) {
+        if (config.getRenderBackend() == ChartConfig.RenderBackend.RASTER) {
+            int labelWidth = yAxis.getMaxLabelWidth();
+            rasterRenderer.draw(g2d, viewport, width, height);
+            if (yAxis.getMaxLabelWidth() != labelWidth) {
+                invalidateLayers();
+            }
+        } else {
+            candleRenderer.draw(g2d, viewport, width, height);
         }
-        AxisUtils.drawGridLines(g2d, transform, getWidth(), getHeight(),
-                config, config.getStartDateTime(), timeframe);
-        yAxis.draw(g2d, transform, getWidth(), getHeight());
-        candleRenderer.draw(g2d, transform, getWidth(), getHeight());
+    }
+
+    // The raster backend lays out the shared price axis while painting, Java2D candles only read
+    @Override
+    protected boolean canPaintDataInParallel() {
+        return config.getRenderBackend() == ChartConfig.RenderBackend.JAVA2D;
+    }
+
+    // At most one frame of the layer is in flight, so the frames can take turns with one batch
+    @Override
+    protected DataFrame prepareDataFrame(AffineTransform viewport, int width, int height) {
+        CandlestickRenderer.Batch batch = frameBatch.update(config).snapshot(dataset, viewport);
+        CandlestickRenderer renderer = candleRenderer;
+        return g2d -> renderer.draw(g2d, viewport, width, height, batch);
+    }
+
+    @Override
+    protected void paintOverlay(Graphics2D g2d, int width, int height) {
+        super.paintOverlay(g2d, width, height);
+        drawLoadingState(g2d, dataset);
+    }
+
+    public CandleData getSeries() {
+        return candleRenderer.getSeries();
+    }
+
+    public Dataset getDataset() {
+        return dataset;
+    }
+
+    /**
+     * Shows {@code dataset} instead of the current one, e.g. the same history in another
+     * timeframe. The caller keeps its references to both datasets.
+     */
+    public void setDataset(Dataset dataset) {
+        this.dataset.removeListener(repaintOnLoad);
+        this.dataset = dataset;
+        this.candleRenderer = new CandlestickRenderer(config, dataset);
+        this.rasterRenderer = new RasterCandleRenderer(config, dataset, yAxis, tickPlanner);
+        dataset.addListener(repaintOnLoad);
+        invalidateLayers();
+    }
+
+    @Override
+    public boolean getValueRange(int firstBar, int lastBar, double[] minMax) {
+        return candleRenderer.getValueRange(firstBar, lastBar, minMax);
+    }
+
+    @Override
+    public void dispose() {
+        dataset.removeListener(repaintOnLoad);
     }
 
 }
\ No newline at end of file
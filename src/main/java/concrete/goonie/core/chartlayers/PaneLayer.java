@@ -0,0 +1,158 @@
+package concrete.goonie.core.chartlayers;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * One cached offscreen image of a {@link ChartWindow}. While the pane is on screen the layer is
+ * a {@link VolatileImage}, so compositing it stays in video memory; when there is no screen
+ * (headless rendering, printing) it falls back to a {@link BufferedImage}.
+ * <p>
+ * A layer is only repainted when it has been invalidated, resized or its video memory was
+ * lost; otherwise painting the pane just draws the cached image.
+ */
+final class PaneLayer {
+    private final boolean opaque;
+    private Image image;
+    private volatile boolean dirty = true;
+
+    PaneLayer(boolean opaque) {
+        this.opaque = opaque;
+    }
+
+    /**
+     * Marks the layer for repainting on the next paint of the pane. Safe from any thread.
+     */
+    void invalidate() {
+        dirty = true;
+    }
+
+    /**
+     * Makes sure the image fits the pane and still holds its contents. Returns a graphics
+     * context set up like {@code target} if the layer must be repainted, with translucent
+     * layers cleared, or {@code null} if the cached image is up to date.
+     */
+    Graphics2D beginPaint(Component pane, Graphics target, int width, int height) {
+        GraphicsConfiguration gc = pane.getGraphicsConfiguration();
+        boolean wantVolatile = gc != null && !GraphicsEnvironment.isHeadless();
+
+        if (image == null || image.getWidth(null) != width || image.getHeight(null) != height
+                || (image instanceof VolatileImage) != wantVolatile) {
+            if (image != null) {
+                image.flush();
+            }
+            image = create(gc, wantVolatile, width, height);
+            dirty = true;
+        } else if (image instanceof VolatileImage) {
+            int status = ((VolatileImage) image).validate(gc);
+            if (status == VolatileImage.IMAGE_INCOMPATIBLE) {
+                image.flush();
+                image = create(gc, true, width, height);
+                dirty = true;
+            } else if (status == VolatileImage.IMAGE_RESTORED) {
+                dirty = true;
+            }
+        }
+        if (!dirty) {
+            return null;
+        }
+        // Cleared before painting, so an invalidation that arrives meanwhile is not lost
+        dirty = false;
+
+        Graphics2D g2d = (Graphics2D) image.getGraphics();
+        if (target instanceof Graphics2D) {
+            g2d.setRenderingHints(((Graphics2D) target).getRenderingHints());
+        }
+        if (!opaque) {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(0, 0, width, height);
+            g2d.setComposite(AlphaComposite.SrcOver);
+        }
+        return g2d;
+    }
+
+    /**
+     * Shifts the cached image {@code dx} pixels horizontally, keeping the contents of an up to
+     * date layer for a scroll. The columns uncovered by the shift keep stale pixels until they
+     * are repainted with {@link #beginPaintColumns}.
+     *
+     * @return {@code false} if the layer has no contents worth keeping and must be repainted
+     * whole with {@link #beginPaint}
+     */
+    boolean scroll(Component pane, int dx, int width, int height) {
+        if (dirty || image == null || image.getWidth(null) != width || image.getHeight(null) != height
+                || Math.abs(dx) >= width) {
+            return false;
+        }
+        if (image instanceof VolatileImage
+                && ((VolatileImage) image).validate(pane.getGraphicsConfiguration()) != VolatileImage.IMAGE_OK) {
+            return false;
+        }
+        Graphics2D g = (Graphics2D) image.getGraphics();
+        g.setComposite(AlphaComposite.Src); // Transparent pixels must overwrite, not blend
+        if (dx > 0) {
+            g.copyArea(0, 0, width - dx, height, dx, 0);
+        } else {
+            g.copyArea(-dx, 0, width + dx, height, dx, 0);
+        }
+        g.dispose();
+        return true;
+    }
+
+    /**
+     * Whether the cached image is up to date and the size of the pane, so single columns of it
+     * can be repainted with {@link #beginPaintColumns}.
+     */
+    boolean isIntact(Component pane, int width, int height) {
+        if (dirty || image == null || image.getWidth(null) != width || image.getHeight(null) != height) {
+            return false;
+        }
+        return !(image instanceof VolatileImage)
+                || ((VolatileImage) image).validate(pane.getGraphicsConfiguration()) == VolatileImage.IMAGE_OK;
+    }
+
+    /**
+     * Like {@link #beginPaint}, but only for columns {@code x..x + w - 1} of a layer whose other
+     * columns are valid: those columns are cleared and the returned context is clipped to them.
+     */
+    Graphics2D beginPaintColumns(Graphics target, int x, int w, int height) {
+        Graphics2D g2d = (Graphics2D) image.getGraphics();
+        if (target instanceof Graphics2D) {
+            g2d.setRenderingHints(((Graphics2D) target).getRenderingHints());
+        }
+        g2d.clipRect(x, 0, w, height);
+        if (!opaque) {
+            g2d.setComposite(AlphaComposite.Clear);
+            g2d.fillRect(x, 0, w, height);
+            g2d.setComposite(AlphaComposite.SrcOver);
+        }
+        return g2d;
+    }
+
+    /**
+     * Draws the layer at the pane's origin.
+     *
+     * @return {@code false} if the video memory was lost while drawing, in which case the layer
+     * is already marked dirty and the pane should be repainted
+     */
+    boolean drawTo(Graphics g) {
+        if (image == null) {
+            return true;
+        }
+        g.drawImage(image, 0, 0, null);
+        if (image instanceof VolatileImage && ((VolatileImage) image).contentsLost()) {
+            dirty = true;
+            return false;
+        }
+        return true;
+    }
+
+    private Image create(GraphicsConfiguration gc, boolean volatileBacked, int width, int height) {
+        int transparency = opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+        if (volatileBacked) {
+            return gc.createCompatibleVolatileImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+    }
+}
@@ -0,0 +1,280 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.datatypes.CandleData;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Compact binary on-disk format for candle history.
+ * <p>
+ * Layout (little endian):
+ * <pre>
+ * offset  size  field
+ *      0     4  magic "GCND"
+ *      4     2  format version
+ *      6     2  reserved
+ *      8    24  symbol, UTF-8, zero padded
+ *     32     8  timeframe description ("M1", "H1", ...), zero padded
+ *     40     8  bar count
+ *     48     8  price scale (prices are stored as round(price * scale))
+ *     56     8  reserved
+ *     64        time column   (8 bytes per bar, epoch seconds)
+ *               open, high, low, close columns (4 bytes per bar each)
+ *               tick volume, volume, spread columns (4 bytes per bar each)
+ * </pre>
+ * Every column is a fixed width block, so {@link #open(Path)} maps each one straight into a
+ * {@link MappedCandleSeries} without reading the file, and {@link #openPaged(Path)} reads any
+ * run of bars with one positional read per column.
+ */
+public final class CandleFile {
+    public static final String EXTENSION = ".gcd";
+
+    private static final int MAGIC = 'G' | 'C' << 8 | 'N' << 16 | 'D' << 24;
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int SYMBOL_BYTES = 24;
+    private static final int TIMEFRAME_BYTES = 8;
+    private static final long MAX_PRICE_SCALE = 100_000_000L;
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    private CandleFile() {
+    }
+
+    /**
+     * Maps a candle file. Only the header is read; the columns are paged in lazily.
+     */
+    public static MappedCandleSeries open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Header header = readHeader(channel, file);
+            int size = header.size;
+            long offset = HEADER_SIZE;
+            LongBuffer time = map(channel, offset, (long) size * Long.BYTES).asLongBuffer();
+            offset += (long) size * Long.BYTES;
+            IntBuffer[] ints = new IntBuffer[7];
+            for (int i = 0; i < ints.length; i++) {
+                ints[i] = map(channel, offset, (long) size * Integer.BYTES).asIntBuffer();
+                offset += (long) size * Integer.BYTES;
+            }
+
+            return new MappedCandleSeries(header.symbol, header.timeframe, size, header.priceScale, time,
+                    ints[0], ints[1], ints[2], ints[3], ints[4], ints[5], ints[6]);
+        }
+    }
+
+    /**
+     * Opens a candle file for reading in chunks through the shared {@link ChunkCache}, so the
+     * heap holds at most the cache's budget of it however long the history is.
+     */
+    public static PagedCandleSeries openPaged(Path file) throws IOException {
+        return openPaged(file, ChunkCache.getShared(), PagedCandleSeries.DEFAULT_CHUNK_BARS);
+    }
+
+    /**
+     * Opens a candle file for reading in chunks of {@code chunkBars} bars, a power of two,
+     * through {@code cache}. The file stays open until the series is closed.
+     */
+    public static PagedCandleSeries openPaged(Path file, ChunkCache cache, int chunkBars) throws IOException {
+        if (chunkBars <= 0 || Integer.bitCount(chunkBars) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two: " + chunkBars);
+        }
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            Header header = readHeader(channel, file);
+            return new PagedCandleSeries(header.symbol, header.timeframe, header.size, header.priceScale,
+                    channel, HEADER_SIZE, cache, chunkBars);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static final class Header {
+        final String symbol;
+        final ENUM_TIMEFRAME timeframe;
+        final int size;
+        final long priceScale;
+
+        Header(String symbol, ENUM_TIMEFRAME timeframe, int size, long priceScale) {
+            this.symbol = symbol;
+            this.timeframe = timeframe;
+            this.size = size;
+            this.priceScale = priceScale;
+        }
+    }
+
+    private static Header readHeader(FileChannel channel, Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header) < 0) {
+                throw new IOException("Truncated candle file header: " + file);
+            }
+        }
+        header.flip();
+
+        if (header.getInt(0) != MAGIC) {
+            throw new IOException("Not a candle file: " + file);
+        }
+        if (header.getShort(4) != VERSION) {
+            throw new IOException("Unsupported candle file version " + header.getShort(4) + ": " + file);
+        }
+        String symbol = readString(header, 8, SYMBOL_BYTES);
+        ENUM_TIMEFRAME timeframe = ENUM_TIMEFRAME.getByDescription(readString(header, 32, TIMEFRAME_BYTES));
+        long count = header.getLong(40);
+        long priceScale = header.getLong(48);
+
+        if (timeframe == null) {
+            throw new IOException("Unknown timeframe in candle file header: " + file);
+        }
+        if (count < 0 || count > Integer.MAX_VALUE || priceScale <= 0) {
+            throw new IOException("Corrupt candle file header: " + file);
+        }
+        long expected = HEADER_SIZE + count * (Long.BYTES + 7L * Integer.BYTES);
+        if (channel.size() < expected) {
+            throw new IOException("Truncated candle file, expected " + expected + " bytes: " + file);
+        }
+        return new Header(symbol, timeframe, (int) count, priceScale);
+    }
+
+    /**
+     * Writes {@code data} to {@code file}, choosing the largest power-of-ten price scale that
+     * keeps every price within a 32-bit column.
+     */
+    public static void write(Path file, CandleData data, String symbol, ENUM_TIMEFRAME timeframe) throws IOException {
+        write(file, data, symbol, timeframe, choosePriceScale(data));
+    }
+
+    public static void write(Path file, CandleData data, String symbol, ENUM_TIMEFRAME timeframe,
+                             long priceScale) throws IOException {
+        int size = data.size();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(0, MAGIC);
+            header.putShort(4, VERSION);
+            writeString(header, 8, SYMBOL_BYTES, symbol);
+            writeString(header, 32, TIMEFRAME_BYTES, timeframe.getDescription());
+            header.putLong(40, size);
+            header.putLong(48, priceScale);
+            writeFully(channel, header);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < size; i++) {
+                if (buffer.remaining() < Long.BYTES) {
+                    flush(channel, buffer);
+                }
+                buffer.putLong(data.getTime(i));
+            }
+            for (int column = 0; column < 7; column++) {
+                for (int i = 0; i < size; i++) {
+                    if (buffer.remaining() < Integer.BYTES) {
+                        flush(channel, buffer);
+                    }
+                    buffer.putInt(intColumnValue(data, column, i, priceScale));
+                }
+            }
+            flush(channel, buffer);
+        }
+    }
+
+    /**
+     * One-shot conversion of an MT5 tab separated export into a candle file.
+     *
+     * @return the number of bars written
+     */
+    public static int convertCsv(Path csv, Path out, String symbol, ENUM_TIMEFRAME timeframe) throws IOException {
+        CandleData data = new Mt5CsvParser().parse(csv);
+        write(out, data, symbol, timeframe);
+        return data.size();
+    }
+
+    /**
+     * Usage: {@code CandleFile <export.csv> <out.gcd> <symbol> <timeframe>}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: CandleFile <export.csv> <out" + EXTENSION + "> <symbol> <timeframe>");
+            System.exit(1);
+        }
+        ENUM_TIMEFRAME timeframe = ENUM_TIMEFRAME.getByDescription(args[3]);
+        if (timeframe == null) {
+            throw new IllegalArgumentException("Unknown timeframe: " + args[3]);
+        }
+        int bars = convertCsv(Path.of(args[0]), Path.of(args[1]), args[2], timeframe);
+        System.out.println("Wrote " + bars + " bars to " + args[1]);
+    }
+
+    static long choosePriceScale(CandleData data) {
+        double maxAbs = 0;
+        for (int i = 0; i < data.size(); i++) {
+            maxAbs = Math.max(maxAbs, Math.max(Math.abs(data.getHigh(i)), Math.abs(data.getLow(i))));
+        }
+        long scale = MAX_PRICE_SCALE;
+        while (scale > 1 && maxAbs * scale > Integer.MAX_VALUE) {
+            scale /= 10;
+        }
+        return scale;
+    }
+
+    private static int intColumnValue(CandleData data, int column, int index, long priceScale) {
+        switch (column) {
+            case 0: return toFixed(data.getOpen(index), priceScale);
+            case 1: return toFixed(data.getHigh(index), priceScale);
+            case 2: return toFixed(data.getLow(index), priceScale);
+            case 3: return toFixed(data.getClose(index), priceScale);
+            case 4: return data.getTickVolume(index);
+            case 5: return data.getVolume(index);
+            default: return data.getSpread(index);
+        }
+    }
+
+    private static int toFixed(double price, long priceScale) {
+        long fixed = Math.round(price * priceScale);
+        if (fixed > Integer.MAX_VALUE || fixed < Integer.MIN_VALUE) {
+            throw new IllegalArgumentException("Price " + price + " does not fit scale " + priceScale);
+        }
+        return (int) fixed;
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long length) throws IOException {
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static String readString(ByteBuffer header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header.get(end) != 0) {
+            end++;
+        }
+        byte[] bytes = new byte[end - offset];
+        header.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer header, int offset, int length, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > length) {
+            throw new IllegalArgumentException("'" + value + "' is longer than " + length + " bytes");
+        }
+        header.put(offset, bytes);
+    }
+}
@@ -0,0 +1,236 @@
+package concrete.goonie.core.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Bounded, least-recently-used cache of the bar chunks of {@link PagedCandleSeries}.
+ * <p>
+ * One cache is meant to be shared by every paged history in the process, so the byte budget
+ * caps the heap taken by history however many instruments and years are open: loading a chunk
+ * that would take the cache over budget evicts the chunks that were used longest ago first.
+ * <p>
+ * A chunk is loaded at most once at a time. {@link #prefetch} loads it on a background virtual
+ * thread; a reader asking for a chunk that is still being prefetched waits for that load
+ * instead of reading the file a second time.
+ */
+public final class ChunkCache {
+    public static final long DEFAULT_BYTE_BUDGET = 256L << 20;
+
+    private static final ChunkCache SHARED = new ChunkCache(DEFAULT_BYTE_BUDGET);
+
+    private final long byteBudget;
+    private final Map<Key, PagedCandleSeries.Chunk> chunks = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, CompletableFuture<PagedCandleSeries.Chunk>> loading = new HashMap<>();
+    private final ExecutorService prefetcher = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Guarded by chunks
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long prefetches;
+    private long evictions;
+
+    private record Key(PagedCandleSeries series, int chunk) {
+    }
+
+    public ChunkCache(long byteBudget) {
+        if (byteBudget <= 0) {
+            throw new IllegalArgumentException("Byte budget must be positive: " + byteBudget);
+        }
+        this.byteBudget = byteBudget;
+    }
+
+    /**
+     * The cache paged histories use unless they are given their own.
+     */
+    public static ChunkCache getShared() {
+        return SHARED;
+    }
+
+    public long getByteBudget() {
+        return byteBudget;
+    }
+
+    /**
+     * Returns chunk {@code chunk} of {@code series}, reading it from disk on a miss.
+     *
+     * @throws UncheckedIOException if the chunk cannot be read
+     */
+    PagedCandleSeries.Chunk get(PagedCandleSeries series, int chunk) {
+        Key key = new Key(series, chunk);
+        CompletableFuture<PagedCandleSeries.Chunk> pending;
+        boolean owner = false;
+        synchronized (chunks) {
+            PagedCandleSeries.Chunk cached = chunks.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+            pending = loading.get(key);
+            if (pending == null) {
+                pending = new CompletableFuture<>();
+                loading.put(key, pending);
+                owner = true;
+            }
+        }
+        if (owner) {
+            return load(key, pending);
+        }
+        try {
+            return pending.join(); // Being prefetched; wait for that load
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Starts loading chunk {@code chunk} of {@code series} in the background, unless it is
+     * cached or already on its way.
+     */
+    void prefetch(PagedCandleSeries series, int chunk) {
+        Key key = new Key(series, chunk);
+        CompletableFuture<PagedCandleSeries.Chunk> pending;
+        synchronized (chunks) {
+            if (chunks.containsKey(key) || loading.containsKey(key)) {
+                return;
+            }
+            prefetches++;
+            pending = new CompletableFuture<>();
+            loading.put(key, pending);
+        }
+        prefetcher.execute(() -> {
+            try {
+                load(key, pending);
+            } catch (UncheckedIOException e) {
+                System.err.println("Cannot prefetch " + series + " chunk " + chunk + ": " + e.getCause());
+            } catch (RuntimeException e) {
+                System.err.println("Cannot prefetch " + series + " chunk " + chunk + ": " + e);
+            }
+        });
+    }
+
+    private PagedCandleSeries.Chunk load(Key key, CompletableFuture<PagedCandleSeries.Chunk> pending) {
+        PagedCandleSeries.Chunk chunk;
+        try {
+            chunk = key.series().readChunk(key.chunk());
+        } catch (IOException e) {
+            UncheckedIOException failure = new UncheckedIOException(e);
+            abandon(key, pending, failure);
+            throw failure;
+        } catch (RuntimeException | Error e) {
+            abandon(key, pending, e);
+            throw e;
+        }
+        synchronized (chunks) {
+            loading.remove(key);
+            if (!key.series().isClosed()) {
+                chunks.put(key, chunk);
+                bytes += chunk.bytes();
+                evict();
+            }
+        }
+        pending.complete(chunk);
+        return chunk;
+    }
+
+    // Lets the callers waiting for a load that failed see the failure, and later calls retry it
+    private void abandon(Key key, CompletableFuture<PagedCandleSeries.Chunk> pending, Throwable failure) {
+        synchronized (chunks) {
+            loading.remove(key);
+        }
+        pending.completeExceptionally(failure);
+    }
+
+    // Drops the least recently used chunks until the cache fits its budget again
+    private void evict() {
+        Iterator<PagedCandleSeries.Chunk> eldest = chunks.values().iterator();
+        while (bytes > byteBudget && eldest.hasNext()) {
+            bytes -= eldest.next().bytes();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Drops every chunk of {@code series}, e.g. once it is closed.
+     */
+    void removeAll(PagedCandleSeries series) {
+        synchronized (chunks) {
+            Iterator<Map.Entry<Key, PagedCandleSeries.Chunk>> entries = chunks.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<Key, PagedCandleSeries.Chunk> entry = entries.next();
+                if (entry.getKey().series() == series) {
+                    bytes -= entry.getValue().bytes();
+                    entries.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Bytes of chunk data currently held.
+     */
+    public long getBytes() {
+        synchronized (chunks) {
+            return bytes;
+        }
+    }
+
+    public int getChunkCount() {
+        synchronized (chunks) {
+            return chunks.size();
+        }
+    }
+
+    public long getHits() {
+        synchronized (chunks) {
+            return hits;
+        }
+    }
+
+    /**
+     * Reads that found their chunk missing and had to load it or wait for a prefetch.
+     */
+    public long getMisses() {
+        synchronized (chunks) {
+            return misses;
+        }
+    }
+
+    public long getPrefetches() {
+        synchronized (chunks) {
+            return prefetches;
+        }
+    }
+
+    public long getEvictions() {
+        synchronized (chunks) {
+            return evictions;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (chunks) {
+            return "ChunkCache{chunks=" + chunks.size() + ", bytes=" + bytes + "/" + byteBudget + ", hits=" + hits
+                    + ", misses=" + misses + ", prefetches=" + prefetches + ", evictions=" + evictions + '}';
+        }
+    }
+}
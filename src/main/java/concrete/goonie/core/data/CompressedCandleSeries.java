@@ -0,0 +1,475 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.datatypes.CandleData;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Read-only {@link CandleData} that keeps its bars bit-packed, for holding far more history in
+ * memory than the eight columns of a {@link concrete.goonie.datatypes.CandleSeries} allow.
+ * <p>
+ * Bars are encoded in independent blocks of {@value #BLOCK_BARS}:
+ * <ul>
+ *     <li>times as deltas of deltas with variable length codes, as in Facebook's Gorilla:
+ *     evenly spaced bars cost one bit each, a gap a few more;</li>
+ *     <li>prices as fixed point integers at the smallest power-of-ten scale that represents
+ *     every price exactly, stored as the open's step from the previous close, the close's
+ *     step from the open and the wicks beyond the body;</li>
+ *     <li>volumes and spreads as offsets from the block's minimum.</li>
+ * </ul>
+ * Each of those columns is packed at the bit width of its largest value in the block, so
+ * autocorrelated prices that move a few points per bar take a few bits.
+ * <p>
+ * Accessors decode the whole block holding the bar into a small scratch block and keep the
+ * last few decoded blocks, so a render loop or range query walking bars in order decodes each
+ * block once. Decoding is exact: every accessor returns the value of the series that was
+ * encoded. Safe to read from any thread.
+ */
+public final class CompressedCandleSeries implements CandleData {
+    public static final int BLOCK_BARS = 256;
+
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_MASK = BLOCK_BARS - 1;
+    private static final int DECODED_SLOTS = 8; // Power of two
+    private static final int MAX_DECIMALS = 8;
+    private static final int WIDTH_BITS = 7;
+
+    private final int size;
+    private final long priceScale;
+    private final double scale;
+    private final long[] bits;
+    private final long[] blockOffsets; // First bit of each block
+    private final AtomicReferenceArray<Block> decoded = new AtomicReferenceArray<>(DECODED_SLOTS); // By block index
+
+    private static final ThreadLocal<long[]> UNPACKED = ThreadLocal.withInitial(() -> new long[4 * BLOCK_BARS]);
+
+    /**
+     * One decoded block. Its arrays are filled after construction, so a block is only handed to
+     * other threads through {@link #decoded} with release/acquire semantics, which makes the
+     * decoded values visible to every reader; it is never written after that.
+     */
+    private static final class Block {
+        final int index;
+        final long[] time;
+        final double[] open;
+        final double[] high;
+        final double[] low;
+        final double[] close;
+        final int[] tickVolume;
+        final int[] volume;
+        final int[] spread;
+
+        Block(int index, int count) {
+            this.index = index;
+            this.time = new long[count];
+            this.open = new double[count];
+            this.high = new double[count];
+            this.low = new double[count];
+            this.close = new double[count];
+            this.tickVolume = new int[count];
+            this.volume = new int[count];
+            this.spread = new int[count];
+        }
+    }
+
+    private CompressedCandleSeries(int size, long priceScale, long[] bits, long[] blockOffsets) {
+        this.size = size;
+        this.priceScale = priceScale;
+        this.scale = priceScale;
+        this.bits = bits;
+        this.blockOffsets = blockOffsets;
+    }
+
+    /**
+     * Encodes the bars of {@code data}.
+     *
+     * @throws IllegalArgumentException if a price has more than {@value #MAX_DECIMALS}
+     *                                  decimals or does not fit a fixed point long at that scale
+     */
+    public static CompressedCandleSeries encode(CandleData data) {
+        int size = data.size();
+        long priceScale = choosePriceScale(data);
+        double scale = priceScale;
+        int blocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT;
+        long[] blockOffsets = new long[blocks];
+        BitWriter out = new BitWriter(Math.max(16, size / 8));
+
+        long[] openStep = new long[BLOCK_BARS];
+        long[] body = new long[BLOCK_BARS];
+        long[] upperWick = new long[BLOCK_BARS];
+        long[] lowerWick = new long[BLOCK_BARS];
+        int[] ints = new int[BLOCK_BARS];
+
+        for (int block = 0; block < blocks; block++) {
+            blockOffsets[block] = out.position();
+            int first = block << BLOCK_SHIFT;
+            int count = Math.min(BLOCK_BARS, size - first);
+
+            // Times: the first raw, then deltas of deltas
+            long time = data.getTime(first);
+            out.write(time, 64);
+            long delta = 0;
+            for (int i = 1; i < count; i++) {
+                long next = data.getTime(first + i);
+                writeDeltaOfDelta(out, (next - time) - delta);
+                delta = next - time;
+                time = next;
+            }
+
+            // Prices: the first open raw, then steps in fixed point
+            long previousClose = fixed(data.getOpen(first), scale);
+            out.write(zigzag(previousClose), 64);
+            for (int i = 0; i < count; i++) {
+                long open = fixed(data.getOpen(first + i), scale);
+                long close = fixed(data.getClose(first + i), scale);
+                long high = fixed(data.getHigh(first + i), scale);
+                long low = fixed(data.getLow(first + i), scale);
+                openStep[i] = zigzag(open - previousClose);
+                body[i] = zigzag(close - open);
+                upperWick[i] = zigzag(high - Math.max(open, close));
+                lowerWick[i] = zigzag(Math.min(open, close) - low);
+                previousClose = close;
+            }
+            writePacked(out, openStep, count);
+            writePacked(out, body, count);
+            writePacked(out, upperWick, count);
+            writePacked(out, lowerWick, count);
+
+            for (int column = 0; column < 3; column++) {
+                for (int i = 0; i < count; i++) {
+                    ints[i] = column == 0 ? data.getTickVolume(first + i)
+                            : column == 1 ? data.getVolume(first + i) : data.getSpread(first + i);
+                }
+                writeOffsets(out, ints, count);
+            }
+        }
+        return new CompressedCandleSeries(size, priceScale, out.toArray(), blockOffsets);
+    }
+
+    /**
+     * Smallest power of ten that turns every price into an integer without changing it.
+     */
+    static long choosePriceScale(CandleData data) {
+        int decimals = 0;
+        long scale = 1;
+        for (int i = 0; i < data.size(); i++) {
+            for (int column = 0; column < 4; column++) {
+                double price = column == 0 ? data.getOpen(i) : column == 1 ? data.getHigh(i)
+                        : column == 2 ? data.getLow(i) : data.getClose(i);
+                while (!isExact(price, scale)) {
+                    if (++decimals > MAX_DECIMALS) {
+                        throw new IllegalArgumentException("Bar " + i + " has a price with more than "
+                                + MAX_DECIMALS + " decimals: " + price);
+                    }
+                    scale *= 10;
+                }
+            }
+        }
+        return scale;
+    }
+
+    private static boolean isExact(double price, long scale) {
+        double scaled = price * scale;
+        return Math.abs(scaled) < 0x1p53 && Math.round(scaled) / (double) scale == price;
+    }
+
+    private static long fixed(double price, double scale) {
+        return Math.round(price * scale);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Gorilla's codes: {@code 0} for no change, otherwise a prefix choosing 7, 9, 12 or 64 bits.
+     */
+    private static void writeDeltaOfDelta(BitWriter out, long deltaOfDelta) {
+        long value = zigzag(deltaOfDelta);
+        if (value == 0) {
+            out.write(0b0, 1);
+        } else if (value < 1 << 7) {
+            out.write(0b01, 2);
+            out.write(value, 7);
+        } else if (value < 1 << 9) {
+            out.write(0b011, 3);
+            out.write(value, 9);
+        } else if (value < 1 << 12) {
+            out.write(0b0111, 4);
+            out.write(value, 12);
+        } else {
+            out.write(0b1111, 4);
+            out.write(value, 64);
+        }
+    }
+
+    // Packs non-negative values at the width of the largest
+    private static void writePacked(BitWriter out, long[] values, int count) {
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            max |= values[i];
+        }
+        int width = 64 - Long.numberOfLeadingZeros(max);
+        out.write(width, WIDTH_BITS);
+        for (int i = 0; i < count; i++) {
+            out.write(values[i], width);
+        }
+    }
+
+    private static void writeOffsets(BitWriter out, int[] values, int count) {
+        int min = Integer.MAX_VALUE;
+        long max = 0;
+        for (int i = 0; i < count; i++) {
+            min = Math.min(min, values[i]);
+        }
+        for (int i = 0; i < count; i++) {
+            max |= (long) values[i] - min;
+        }
+        int width = 64 - Long.numberOfLeadingZeros(max);
+        out.write(min, 32);
+        out.write(width, WIDTH_BITS);
+        for (int i = 0; i < count; i++) {
+            out.write((long) values[i] - min, width);
+        }
+    }
+
+    private Block block(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Bar " + index + " of " + size);
+        }
+        int blockIndex = index >>> BLOCK_SHIFT;
+        int slot = blockIndex & (DECODED_SLOTS - 1);
+        Block block = decoded.getAcquire(slot);
+        if (block == null || block.index != blockIndex) {
+            block = decode(blockIndex);
+            decoded.setRelease(slot, block); // Racing readers at worst decode the block twice
+        }
+        return block;
+    }
+
+    private Block decode(int blockIndex) {
+        int first = blockIndex << BLOCK_SHIFT;
+        int count = Math.min(BLOCK_BARS, size - first);
+        Block block = new Block(blockIndex, count);
+        long[] words = bits;
+        long position = blockOffsets[blockIndex];
+
+        long time = readBits(words, position, 64);
+        position += 64;
+        block.time[0] = time;
+        long delta = 0;
+        for (int i = 1; i < count; i++) {
+            // Peek at the longest prefix at once; the codes are 0, 01, 011, 0111 and 1111
+            long prefix = readBits(words, position, 4);
+            long value;
+            if ((prefix & 1) == 0) {
+                value = 0;
+                position += 1;
+            } else if ((prefix & 2) == 0) {
+                value = readBits(words, position + 2, 7);
+                position += 2 + 7;
+            } else if ((prefix & 4) == 0) {
+                value = readBits(words, position + 3, 9);
+                position += 3 + 9;
+            } else if ((prefix & 8) == 0) {
+                value = readBits(words, position + 4, 12);
+                position += 4 + 12;
+            } else {
+                value = readBits(words, position + 4, 64);
+                position += 4 + 64;
+            }
+            delta += unzigzag(value);
+            time += delta;
+            block.time[i] = time;
+        }
+
+        long close = unzigzag(readBits(words, position, 64));
+        position += 64;
+        long[] steps = UNPACKED.get();
+        for (int column = 0; column < 4; column++) {
+            int width = (int) readBits(words, position, WIDTH_BITS);
+            position = unpack(words, position + WIDTH_BITS, width, steps, column * count, count);
+        }
+        for (int i = 0; i < count; i++) {
+            long open = close + unzigzag(steps[i]);
+            close = open + unzigzag(steps[count + i]);
+            long high = Math.max(open, close) + unzigzag(steps[2 * count + i]);
+            long low = Math.min(open, close) - unzigzag(steps[3 * count + i]);
+            block.open[i] = open / scale;
+            block.close[i] = close / scale;
+            block.high[i] = high / scale;
+            block.low[i] = low / scale;
+        }
+
+        int[][] columns = {block.tickVolume, block.volume, block.spread};
+        for (int[] column : columns) {
+            int min = (int) readBits(words, position, 32);
+            int width = (int) readBits(words, position + 32, WIDTH_BITS);
+            position = unpack(words, position + 32 + WIDTH_BITS, width, steps, 0, count);
+            for (int i = 0; i < count; i++) {
+                column[i] = (int) (min + steps[i]);
+            }
+        }
+        return block;
+    }
+
+    /**
+     * Reads {@code count} values of {@code width} bits each, starting at bit {@code position},
+     * into {@code out} from {@code offset} on.
+     *
+     * @return the bit position after the last value
+     */
+    private static long unpack(long[] words, long position, int width, long[] out, int offset, int count) {
+        if (width == 0) {
+            Arrays.fill(out, offset, offset + count, 0);
+            return position;
+        }
+        long mask = width == 64 ? -1L : (1L << width) - 1;
+        int word = (int) (position >>> 6);
+        int bit = (int) (position & 63);
+        for (int i = 0; i < count; i++) {
+            long value = words[word] >>> bit;
+            int end = bit + width;
+            if (end > 64) {
+                value |= words[word + 1] << (64 - bit);
+            }
+            out[offset + i] = value & mask;
+            if (end >= 64) {
+                word++;
+                bit = end - 64;
+            } else {
+                bit = end;
+            }
+        }
+        return position + (long) width * count;
+    }
+
+    /**
+     * Reads {@code count} bits, {@code 0..64}, starting at bit {@code position}, least
+     * significant bit first.
+     */
+    private static long readBits(long[] words, long position, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        int word = (int) (position >>> 6);
+        int offset = (int) (position & 63);
+        long value = words[word] >>> offset;
+        if (offset + count > 64) {
+            value |= words[word + 1] << (64 - offset);
+        }
+        return count == 64 ? value : value & ((1L << count) - 1);
+    }
+
+    /**
+     * Appends bit fields to a growing array of longs, least significant bit first.
+     */
+    private static final class BitWriter {
+        private long[] words;
+        private long position;
+
+        BitWriter(int initialWords) {
+            words = new long[initialWords];
+        }
+
+        long position() {
+            return position;
+        }
+
+        void write(long value, int count) {
+            if (count == 0) {
+                return;
+            }
+            if (count < 64) {
+                value &= (1L << count) - 1;
+            }
+            int word = (int) (position >>> 6);
+            int offset = (int) (position & 63);
+            if (word + 1 >= words.length) {
+                words = Arrays.copyOf(words, Math.max(word + 2, words.length + (words.length >> 1)));
+            }
+            words[word] |= value << offset;
+            if (offset + count > 64) {
+                words[word + 1] |= value >>> (64 - offset);
+            }
+            position += count;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(words, (int) ((position + 63) >>> 6));
+        }
+    }
+
+    /**
+     * The scale prices are stored at: they are kept as {@code round(price * scale)}.
+     */
+    public long getPriceScale() {
+        return priceScale;
+    }
+
+    /**
+     * Heap taken by the encoded bars, not counting the few decoded scratch blocks.
+     */
+    public long getEncodedBytes() {
+        return (long) bits.length * Long.BYTES + (long) blockOffsets.length * Long.BYTES;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getTime(int index) {
+        return block(index).time[index & BLOCK_MASK];
+    }
+
+    @Override
+    public double getOpen(int index) {
+        return block(index).open[index & BLOCK_MASK];
+    }
+
+    @Override
+    public double getHigh(int index) {
+        return block(index).high[index & BLOCK_MASK];
+    }
+
+    @Override
+    public double getLow(int index) {
+        return block(index).low[index & BLOCK_MASK];
+    }
+
+    @Override
+    public double getClose(int index) {
+        return block(index).close[index & BLOCK_MASK];
+    }
+
+    @Override
+    public int getTickVolume(int index) {
+        return block(index).tickVolume[index & BLOCK_MASK];
+    }
+
+    @Override
+    public int getVolume(int index) {
+        return block(index).volume[index & BLOCK_MASK];
+    }
+
+    @Override
+    public int getSpread(int index) {
+        return block(index).spread[index & BLOCK_MASK];
+    }
+
+    @Override
+    public String toString() {
+        return "CompressedCandleSeries{" +
+                "size=" + size +
+                ", priceScale=" + priceScale +
+                ", encodedBytes=" + getEncodedBytes() +
+                '}';
+    }
+}
@@ -0,0 +1,316 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.datatypes.CandleData;
+import concrete.goonie.datatypes.CandleSeries;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * A candle history handed out by the {@link DatasetRegistry}. Every pane showing the same
+ * {@link DatasetKey} gets the same instance and reads the same read-only {@link CandleData};
+ * the registry counts the holders and drops the bars once the last one releases it.
+ * <p>
+ * Datasets are loaded in the background. {@link #getData()} never blocks: while a text export
+ * is being parsed it returns the bars that have been loaded so far, growing front to back.
+ * Listeners hear about every published chunk and about the end of the load; they are called
+ * on the loading thread.
+ */
+public class Dataset {
+
+    public enum State {LOADING, LOADED, FAILED}
+
+    /**
+     * Callback for load progress and live bar updates. The load callbacks run on the loading thread.
+     */
+    public interface DatasetListener {
+        void onProgress(Dataset dataset, double progress);
+
+        default void onLoaded(Dataset dataset) {
+        }
+
+        default void onFailed(Dataset dataset, Throwable cause) {
+        }
+
+        /**
+         * Bars {@code firstBar..lastBar} were added or changed in place by a live feed, on the
+         * feed's thread.
+         */
+        default void onBarsUpdated(Dataset dataset, int firstBar, int lastBar) {
+        }
+    }
+
+    private final DatasetKey key;
+    private final CompletableFuture<Dataset> loaded = new CompletableFuture<>();
+    private final List<DatasetListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile CandleData data = new CandleSeries(16);
+    private volatile double progress;
+    private volatile State state = State.LOADING;
+    private volatile Throwable failure;
+    private volatile long version; // Written by the series' writer only
+    private volatile boolean live;
+    private OhlcPyramid pyramid;
+    private TimeIndex timeIndex;
+    private Resampler resampler;
+    private final Map<ENUM_TIMEFRAME, Derived> resampled = new EnumMap<>(ENUM_TIMEFRAME.class);
+    int references; // guarded by the registry
+
+    // A resampled dataset and the listener through which it follows this one
+    private record Derived(Dataset dataset, DatasetListener follower) {
+    }
+
+    Dataset(DatasetKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Wraps bars that are already in memory in a dataset that is not tracked by the registry.
+     */
+    public static Dataset of(DatasetKey key, CandleData data) {
+        Dataset dataset = new Dataset(key);
+        dataset.publish(data, 1.0);
+        dataset.finish();
+        return dataset;
+    }
+
+    public DatasetKey getKey() {
+        return key;
+    }
+
+    /**
+     * Returns the bars loaded so far. The returned view is safe to read from any thread.
+     */
+    public CandleData getData() {
+        return data;
+    }
+
+    /**
+     * Returns the min/max aggregation pyramid over the current bars, shared by every pane
+     * showing this dataset. The dataset's writer syncs it with every bar it publishes, so
+     * readers such as the panes on the EDT use it as it is. Over a paged or compressed history
+     * the finest levels are not stored, so the pyramid stays small next to the history.
+     */
+    public synchronized OhlcPyramid getPyramid() {
+        CandleData current = data;
+        if (pyramid == null || pyramid.getSource() != current) {
+            pyramid = createPyramid(current);
+        }
+        return pyramid;
+    }
+
+    private static OhlcPyramid createPyramid(CandleData data) {
+        return data instanceof PagedCandleSeries || data instanceof CompressedCandleSeries
+                ? new OhlcPyramid(data, OhlcPyramid.COMPACT_FIRST_STORED_LEVEL)
+                : new OhlcPyramid(data);
+    }
+
+    /**
+     * Returns the time index over the current bars, for looking bars up by time.
+     */
+    public synchronized TimeIndex getTimeIndex() {
+        CandleData current = data;
+        if (timeIndex == null || timeIndex.getSource() != current) {
+            timeIndex = new TimeIndex(current, key.timeframe());
+        }
+        return timeIndex;
+    }
+
+    /**
+     * Returns this history in {@code timeframe}, built from these bars by a {@link Resampler}.
+     * The derived dataset is created once per timeframe and follows this one: it grows as
+     * bars are published here and finishes or fails with it, and is dropped when the
+     * registry releases this dataset. Asking for this dataset's own timeframe returns this
+     * dataset.
+     *
+     * @throws IllegalArgumentException if {@code timeframe} cannot be built from this one
+     */
+    public synchronized Dataset resample(ENUM_TIMEFRAME timeframe) {
+        if (timeframe == key.timeframe()) {
+            return this;
+        }
+        Derived derived = resampled.get(timeframe);
+        if (derived != null) {
+            return derived.dataset();
+        }
+        if (!Resampler.canResample(key.timeframe(), timeframe)) {
+            throw new IllegalArgumentException("Cannot build " + timeframe + " bars from " + key);
+        }
+
+        Dataset created = new Dataset(new DatasetKey(key.source(), key.symbol(), timeframe));
+        created.live = live;
+        DatasetListener follower = new DatasetListener() {
+            @Override
+            public void onProgress(Dataset dataset, double progress) {
+                created.publish(resampledData(timeframe), progress);
+            }
+
+            @Override
+            public void onLoaded(Dataset dataset) {
+                created.publish(resampledData(timeframe), 1.0);
+                created.finish();
+            }
+
+            @Override
+            public void onFailed(Dataset dataset, Throwable cause) {
+                created.fail(cause);
+            }
+
+            @Override
+            public void onBarsUpdated(Dataset dataset, int firstBar, int lastBar) {
+                // Live bars only ever change the open derived bar and append after it
+                int before = created.getData().size();
+                CandleData bars = resampledData(timeframe);
+                if (bars.size() > 0) {
+                    created.publishBars(Math.max(0, before - 1), bars.size() - 1);
+                }
+            }
+        };
+        resampled.put(timeframe, new Derived(created, follower));
+        addListener(follower);
+        if (state == State.LOADING) {
+            created.publish(resampledData(timeframe), progress);
+        }
+        return created;
+    }
+
+    /**
+     * Stops the resampled datasets following this one and forgets them along with their bars.
+     * Called by the registry once the last holder has released this dataset.
+     */
+    synchronized void dropResampled() {
+        for (Derived derived : resampled.values()) {
+            removeListener(derived.follower());
+        }
+        resampled.clear();
+        resampler = null;
+    }
+
+    private synchronized CandleData resampledData(ENUM_TIMEFRAME timeframe) {
+        CandleData current = data;
+        if (resampler == null || resampler.getBase() != current) {
+            resampler = new Resampler(current, key.timeframe());
+        }
+        return resampler.get(timeframe);
+    }
+
+    /**
+     * Number of live updates published so far; it grows with every {@link #publishBars}.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Whether the bars can change after loading: the dataset was handed to the registry by its
+     * writer, has published live updates or follows a dataset that does.
+     */
+    public boolean isLive() {
+        return live;
+    }
+
+    void markLive() {
+        live = true;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isLoaded() {
+        return state == State.LOADED;
+    }
+
+    /**
+     * Fraction of the source that has been loaded, between 0 and 1.
+     */
+    public double getProgress() {
+        return progress;
+    }
+
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Completes once the whole source has been loaded, or exceptionally if loading failed.
+     */
+    public CompletableFuture<Dataset> whenLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Registers a listener. A listener added after the load ended is told about the outcome
+     * immediately, so callers do not race against the loader.
+     */
+    public void addListener(DatasetListener listener) {
+        listeners.add(listener);
+        if (state == State.LOADED) {
+            listener.onLoaded(this);
+        } else if (state == State.FAILED) {
+            listener.onFailed(this, failure);
+        }
+    }
+
+    public void removeListener(DatasetListener listener) {
+        listeners.remove(listener);
+    }
+
+    // Syncs the pyramid on the writer's thread before anyone is told about the bars. A paged
+    // history is read straight from its file, so the pass over it leaves the shared cache alone
+    void publish(CandleData current, double progress) {
+        OhlcPyramid synced;
+        synchronized (this) {
+            synced = pyramid != null && pyramid.getSource() == current ? pyramid : createPyramid(current);
+        }
+        synced.sync(current instanceof PagedCandleSeries ? ((PagedCandleSeries) current).readDirectly() : current);
+        synchronized (this) {
+            pyramid = synced;
+            data = current;
+        }
+        this.progress = progress;
+        for (DatasetListener listener : listeners) {
+            listener.onProgress(this, progress);
+        }
+    }
+
+    /**
+     * Tells the listeners that the writer of this dataset's series added or changed bars
+     * {@code firstBar..lastBar}, and counts a new {@linkplain #getVersion() version}. For live
+     * data, whose bars change after the load; only the series' writer may call it.
+     */
+    public void publishBars(int firstBar, int lastBar) {
+        getPyramid().sync();
+        live = true;
+        version++;
+        for (DatasetListener listener : listeners) {
+            listener.onBarsUpdated(this, firstBar, lastBar);
+        }
+    }
+
+    void finish() {
+        progress = 1.0;
+        state = State.LOADED;
+        for (DatasetListener listener : listeners) {
+            listener.onLoaded(this);
+        }
+        loaded.complete(this);
+    }
+
+    void fail(Throwable cause) {
+        failure = cause;
+        state = State.FAILED;
+        for (DatasetListener listener : listeners) {
+            listener.onFailed(this, cause);
+        }
+        loaded.completeExceptionally(cause);
+    }
+
+    @Override
+    public String toString() {
+        return "Dataset{" + key + ", " + state + '}';
+    }
+}
@@ -0,0 +1,27 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+
+import java.util.Objects;
+
+/**
+ * Identifies a candle history in the {@link DatasetRegistry}.
+ *
+ * @param source    where the bars come from: a classpath resource or file path of an MT5 export,
+ *                  or a path to a {@link CandleFile}
+ * @param symbol    the instrument the bars belong to
+ * @param timeframe the period of one bar
+ */
+public record DatasetKey(String source, String symbol, ENUM_TIMEFRAME timeframe) {
+
+    public DatasetKey {
+        Objects.requireNonNull(source, "source");
+        Objects.requireNonNull(symbol, "symbol");
+        Objects.requireNonNull(timeframe, "timeframe");
+    }
+
+    @Override
+    public String toString() {
+        return symbol + "," + timeframe + " (" + source + ")";
+    }
+}
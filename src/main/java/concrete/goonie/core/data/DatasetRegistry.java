@@ -0,0 +1,174 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.datatypes.CandleSeries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Process-wide cache of loaded candle histories.
+ * <p>
+ * {@link #acquire(DatasetKey)} starts loading a dataset the first time it is asked for and
+ * hands the same {@link Dataset} to every later caller; {@link #release(Dataset)} undoes one
+ * acquire and forgets the dataset when nobody holds it any more.
+ * <p>
+ * Loads run on virtual threads, one per dataset, and never on the caller's thread: acquire
+ * returns at once and the dataset publishes its bars chunk by chunk while the source is
+ * parsed. The CPU heavy parsing itself fans out to the common fork/join pool. Candle files are
+ * not loaded at all but read in chunks through the shared {@link ChunkCache}.
+ */
+public final class DatasetRegistry {
+    private static final DatasetRegistry INSTANCE = new DatasetRegistry();
+
+    private final Map<DatasetKey, Dataset> datasets = new HashMap<>();
+    private final ExecutorService loader = Executors.newVirtualThreadPerTaskExecutor();
+    private volatile boolean compressHistory;
+
+    private DatasetRegistry() {
+    }
+
+    public static DatasetRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the shared dataset for {@code key}, starting a background load if it is not
+     * loaded yet. Every call must be paired with a {@link #release(Dataset)}. Load failures
+     * are reported through {@link Dataset#whenLoaded()} and the dataset's listeners.
+     */
+    public Dataset acquire(DatasetKey key) {
+        Dataset dataset;
+        boolean created = false;
+        synchronized (datasets) {
+            dataset = datasets.get(key);
+            if (dataset == null) {
+                dataset = new Dataset(key);
+                datasets.put(key, dataset);
+                created = true;
+            }
+            dataset.references++;
+        }
+
+        if (created) {
+            Dataset loading = dataset;
+            loader.execute(() -> load(loading));
+        }
+        return dataset;
+    }
+
+    /**
+     * Makes {@code dataset}, whose bars its creator provides (e.g. a live feed), available to
+     * {@link #acquire(DatasetKey)} under its key. Counts as one acquire by the caller, who
+     * releases it like any other.
+     *
+     * @throws IllegalStateException if a dataset is already registered under that key
+     */
+    public void register(Dataset dataset) {
+        synchronized (datasets) {
+            if (datasets.putIfAbsent(dataset.getKey(), dataset) != null) {
+                throw new IllegalStateException("A dataset is already registered for " + dataset.getKey());
+            }
+            dataset.references++;
+            dataset.markLive();
+        }
+    }
+
+    /**
+     * Drops one reference to {@code dataset}; the last release evicts it from the registry.
+     */
+    public void release(Dataset dataset) {
+        synchronized (datasets) {
+            if (dataset.references <= 0) {
+                throw new IllegalStateException("Dataset released more often than acquired: " + dataset);
+            }
+            if (--dataset.references == 0) {
+                datasets.remove(dataset.getKey(), dataset);
+            } else {
+                return;
+            }
+        }
+        dataset.dropResampled();
+        if (dataset.getData() instanceof PagedCandleSeries) {
+            try {
+                ((PagedCandleSeries) dataset.getData()).close();
+            } catch (IOException e) {
+                System.err.println("Cannot close " + dataset.getKey() + ": " + e);
+            }
+        }
+    }
+
+    /**
+     * Whether histories parsed from CSV are kept as a {@link CompressedCandleSeries} once
+     * loaded, which holds several times more bars per byte at the cost of decoding them. Off by
+     * default; applies to datasets loaded after the call.
+     */
+    public void setCompressHistory(boolean compressHistory) {
+        this.compressHistory = compressHistory;
+    }
+
+    public boolean isCompressHistory() {
+        return compressHistory;
+    }
+
+    public int getReferenceCount(DatasetKey key) {
+        synchronized (datasets) {
+            Dataset dataset = datasets.get(key);
+            return dataset == null ? 0 : dataset.references;
+        }
+    }
+
+    private void load(Dataset dataset) {
+        try {
+            String source = dataset.getKey().source();
+            if (source.endsWith(CandleFile.EXTENSION)) {
+                dataset.publish(CandleFile.openPaged(Path.of(source)), 1.0);
+                dataset.finish();
+                return;
+            }
+
+            CandleSeries series = new CandleSeries();
+            dataset.publish(series, 0.0);
+            Mt5CsvParser.ProgressListener progress = (parsedBytes, totalBytes) ->
+                    dataset.publish(series, totalBytes > 0 ? (double) parsedBytes / totalBytes : 0.0);
+
+            Path file = Path.of(source);
+            if (Files.isRegularFile(file)) {
+                new Mt5CsvParser().parse(file, series, progress);
+            } else {
+                URL resource = DatasetRegistry.class.getClassLoader().getResource(source);
+                if (resource == null) {
+                    throw new IllegalArgumentException("File not found: " + source);
+                }
+                // Resources are streamed, so the first bars show before the whole file is read
+                URLConnection connection = resource.openConnection();
+                try (InputStream in = connection.getInputStream()) {
+                    new Mt5CsvParser().parse(in, connection.getContentLengthLong(), series, progress);
+                }
+            }
+            if (compressHistory) {
+                compress(dataset, series);
+            }
+            dataset.finish();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Cannot load " + dataset.getKey() + ": " + e);
+            dataset.fail(e);
+        }
+    }
+
+    // Swaps the parsed bars for their encoded form; prices it cannot encode exactly stay as they are
+    private static void compress(Dataset dataset, CandleSeries series) {
+        try {
+            dataset.publish(CompressedCandleSeries.encode(series), 1.0);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Keeping " + dataset.getKey() + " uncompressed: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.datatypes.CandleData;
+
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+
+/**
+ * {@link CandleData} backed by the memory mapped columns of a {@link CandleFile}. Nothing is
+ * copied onto the heap: each accessor reads straight from the mapping, and the operating
+ * system pages the columns in as they are touched. Prices are stored as fixed point integers
+ * and divided by the file's price scale on access.
+ */
+public class MappedCandleSeries implements CandleData {
+    private final String symbol;
+    private final ENUM_TIMEFRAME timeframe;
+    private final int size;
+    private final double priceScale;
+
+    private final LongBuffer time;
+    private final IntBuffer open;
+    private final IntBuffer high;
+    private final IntBuffer low;
+    private final IntBuffer close;
+    private final IntBuffer tickVolume;
+    private final IntBuffer volume;
+    private final IntBuffer spread;
+
+    MappedCandleSeries(String symbol, ENUM_TIMEFRAME timeframe, int size, long priceScale,
+                       LongBuffer time, IntBuffer open, IntBuffer high, IntBuffer low, IntBuffer close,
+                       IntBuffer tickVolume, IntBuffer volume, IntBuffer spread) {
+        this.symbol = symbol;
+        this.timeframe = timeframe;
+        this.size = size;
+        this.priceScale = priceScale;
+        this.time = time;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.tickVolume = tickVolume;
+        this.volume = volume;
+        this.spread = spread;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public ENUM_TIMEFRAME getTimeframe() {
+        return timeframe;
+    }
+
+    public double getPriceScale() {
+        return priceScale;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getTime(int index) {
+        return time.get(index);
+    }
+
+    @Override
+    public double getOpen(int index) {
+        return open.get(index) / priceScale;
+    }
+
+    @Override
+    public double getHigh(int index) {
+        return high.get(index) / priceScale;
+    }
+
+    @Override
+    public double getLow(int index) {
+        return low.get(index) / priceScale;
+    }
+
+    @Override
+    public double getClose(int index) {
+        return close.get(index) / priceScale;
+    }
+
+    @Override
+    public int getTickVolume(int index) {
+        return tickVolume.get(index);
+    }
+
+    @Override
+    public int getVolume(int index) {
+        return volume.get(index);
+    }
+
+    @Override
+    public int getSpread(int index) {
+        return spread.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return "MappedCandleSeries{" +
+                "symbol=" + symbol +
+                ", timeframe=" + timeframe +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,427 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.datatypes.CandleSeries;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Parser for the tab separated history export of MetaTrader 5.
+ * <p>
+ * Two layouts are understood, with or without a time column:
+ * <pre>
+ * &lt;DATE&gt;  &lt;TIME&gt;  &lt;OPEN&gt; &lt;HIGH&gt; &lt;LOW&gt; &lt;CLOSE&gt; &lt;TICKVOL&gt; &lt;VOL&gt; &lt;SPREAD&gt;
+ * &lt;DATE&gt;  &lt;OPEN&gt; &lt;HIGH&gt; &lt;LOW&gt; &lt;CLOSE&gt; &lt;TICKVOL&gt; &lt;VOL&gt; &lt;SPREAD&gt;
+ * </pre>
+ * Dates are {@code yyyy.MM.dd}, times {@code HH:mm[:ss]}. Any line that does not start with a
+ * digit (the header, a byte order mark) is skipped.
+ * <p>
+ * The parser works on raw bytes and decodes dates and numbers by hand, so nothing is
+ * allocated per line. Inputs larger than {@link #MIN_CHUNK_SIZE} are cut into newline aligned
+ * chunks that are parsed in parallel on a {@link ForkJoinPool}; each chunk fills its own
+ * columnar buffer and the buffers are appended to the target in file order as soon as all
+ * chunks before them are done, so readers of the target see the history grow front to back.
+ * Streams are read and parsed in blocks of {@link #STREAM_BLOCK_SIZE}, so the first bars
+ * arrive long before a large stream has been read.
+ */
+public class Mt5CsvParser {
+    static final int MIN_CHUNK_SIZE = 1 << 20;
+    static final int MAX_CHUNK_SIZE = 16 << 20;
+    static final int STREAM_BLOCK_SIZE = 4 << 20;
+    private static final int ESTIMATED_LINE_LENGTH = 60;
+
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18
+    };
+
+    /**
+     * Receives the parsing progress after each chunk has been appended to the target.
+     * {@code totalBytes} is -1 while parsing a stream of unknown length.
+     */
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long parsedBytes, long totalBytes);
+    }
+
+    private static final ProgressListener NO_PROGRESS = (parsedBytes, totalBytes) -> {
+    };
+
+    private final ForkJoinPool pool;
+
+    public Mt5CsvParser() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public Mt5CsvParser(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Parses a file by mapping it into memory; the file is never copied onto the heap.
+     */
+    public CandleSeries parse(Path file) throws IOException {
+        CandleSeries series = new CandleSeries();
+        parse(file, series, NO_PROGRESS);
+        return series;
+    }
+
+    public void parse(Path file, CandleSeries target, ProgressListener listener) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                throw new IOException("File too large for a single mapping: " + file);
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            target.ensureCapacity(target.size() + estimateBars(length));
+            parse(buffer, target, listener);
+        }
+    }
+
+    public CandleSeries parse(InputStream in) throws IOException {
+        CandleSeries series = new CandleSeries();
+        parse(in, series, NO_PROGRESS);
+        return series;
+    }
+
+    public void parse(InputStream in, CandleSeries target, ProgressListener listener) throws IOException {
+        parse(in, -1, target, listener);
+    }
+
+    /**
+     * Parses a stream block by block, appending each block's bars before reading the next one.
+     *
+     * @param totalBytes the length of the stream if known, for the progress, or -1
+     */
+    public void parse(InputStream in, long totalBytes, CandleSeries target, ProgressListener listener)
+            throws IOException {
+        if (totalBytes > 0) {
+            target.ensureCapacity(target.size() + estimateBars(totalBytes));
+        }
+        byte[] block = new byte[STREAM_BLOCK_SIZE];
+        int carried = 0; // Start of a line cut by the previous block, moved to the front
+        long consumed = 0;
+        while (true) {
+            int filled = carried + in.readNBytes(block, carried, block.length - carried);
+            boolean last = filled < block.length;
+            int end = last ? filled : lastLineEnd(block, filled);
+            if (end == 0 && !last) {
+                // A single line longer than the block
+                carried = filled;
+                block = Arrays.copyOf(block, block.length * 2);
+                continue;
+            }
+
+            long before = consumed;
+            parse(ByteBuffer.wrap(block, 0, end), target,
+                    (parsedBytes, blockBytes) -> listener.onProgress(before + parsedBytes, totalBytes));
+            consumed += end;
+            if (last) {
+                return;
+            }
+            carried = filled - end;
+            System.arraycopy(block, end, block, 0, carried);
+        }
+    }
+
+    private static int lastLineEnd(byte[] bytes, int length) {
+        for (int i = length - 1; i >= 0; i--) {
+            if (bytes[i] == '\n') {
+                return i + 1;
+            }
+        }
+        return 0;
+    }
+
+    public void parse(ByteBuffer buffer, CandleSeries target) {
+        parse(buffer, target, NO_PROGRESS);
+    }
+
+    /**
+     * Parses every line between the buffer's position and limit and appends the bars to
+     * {@code target} in file order, reporting progress after every appended chunk.
+     */
+    public void parse(ByteBuffer buffer, CandleSeries target, ProgressListener listener) {
+        int start = buffer.position();
+        int end = buffer.limit();
+        int length = end - start;
+        int chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, length / (pool.getParallelism() * 4)));
+        int chunks = Math.max(1, (int) (((long) length + chunkSize - 1) / chunkSize));
+
+        if (chunks == 1) {
+            new Chunk(buffer, start, end).parseInto(target);
+            listener.onProgress(length, length);
+            return;
+        }
+
+        List<ForkJoinTask<CandleSeries>> tasks = new ArrayList<>(chunks);
+        List<Integer> chunkEnds = new ArrayList<>(chunks);
+        int chunkStart = start;
+        for (int i = 1; i <= chunks && chunkStart < end; i++) {
+            int chunkEnd = (i == chunks) ? end : nextLineStart(buffer, start + (int) ((long) length * i / chunks), end);
+            if (chunkEnd <= chunkStart) {
+                continue;
+            }
+            Chunk chunk = new Chunk(buffer, chunkStart, chunkEnd);
+            tasks.add(pool.submit(chunk::parse));
+            chunkEnds.add(chunkEnd);
+            chunkStart = chunkEnd;
+        }
+
+        for (int i = 0; i < tasks.size(); i++) {
+            target.addAll(tasks.get(i).join());
+            listener.onProgress(chunkEnds.get(i) - start, length);
+        }
+    }
+
+    private static int nextLineStart(ByteBuffer buffer, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (buffer.get(i) == '\n') {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    private static int estimateBars(long bytes) {
+        return (int) Math.min(Integer.MAX_VALUE - 8, bytes / ESTIMATED_LINE_LENGTH + 16);
+    }
+
+    /**
+     * Days since 1970-01-01 for a proleptic Gregorian date.
+     */
+    static long daysFromCivil(int year, int month, int day) {
+        year -= month <= 2 ? 1 : 0;
+        int era = (year >= 0 ? year : year - 399) / 400;
+        int yearOfEra = year - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Parsing state for one newline aligned slice of the input. The cursor and the error flag
+     * are plain fields so the per-field methods can advance them without allocating.
+     */
+    private static final class Chunk {
+        private final ByteBuffer buffer;
+        private final int start;
+        private final int end;
+        private int pos;
+        private boolean error;
+
+        Chunk(ByteBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        CandleSeries parse() {
+            CandleSeries series = new CandleSeries(estimateBars(end - start));
+            parseInto(series);
+            return series;
+        }
+
+        void parseInto(CandleSeries series) {
+            pos = start;
+            while (pos < end) {
+                int lineStart = pos;
+                byte first = buffer.get(pos);
+                if (first < '0' || first > '9') {
+                    skipLine();
+                    continue;
+                }
+                error = false;
+
+                long days = parseDate();
+                long seconds = 0;
+                skipSeparator();
+                if (pos + 2 < end && buffer.get(pos + 2) == ':') {
+                    seconds = parseTime();
+                    skipSeparator();
+                }
+                double open = parseDouble();
+                skipSeparator();
+                double high = parseDouble();
+                skipSeparator();
+                double low = parseDouble();
+                skipSeparator();
+                double close = parseDouble();
+                skipSeparator();
+                int tickVol = parseInt();
+                skipSeparator();
+                int volume = parseInt();
+                skipSeparator();
+                int spread = parseInt();
+
+                if (error) {
+                    reportBadLine(lineStart);
+                } else {
+                    series.add(days * 86400L + seconds, open, high, low, close, tickVol, volume, spread);
+                }
+                skipLine();
+            }
+        }
+
+        private void skipLine() {
+            while (pos < end && buffer.get(pos) != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+
+        private void skipSeparator() {
+            if (pos < end && (buffer.get(pos) == '\t' || buffer.get(pos) == ' ')) {
+                pos++;
+            } else {
+                error = true;
+            }
+        }
+
+        private long parseDate() {
+            int year = parseDigits(4);
+            expect('.');
+            int month = parseDigits(2);
+            expect('.');
+            int day = parseDigits(2);
+            return daysFromCivil(year, month, day);
+        }
+
+        private long parseTime() {
+            int hour = parseDigits(2);
+            expect(':');
+            int minute = parseDigits(2);
+            int second = 0;
+            if (pos < end && buffer.get(pos) == ':') {
+                pos++;
+                second = parseDigits(2);
+            }
+            return hour * 3600L + minute * 60L + second;
+        }
+
+        private int parseDigits(int count) {
+            int value = 0;
+            for (int i = 0; i < count; i++) {
+                int digit = pos < end ? buffer.get(pos) - '0' : -1;
+                if (digit < 0 || digit > 9) {
+                    error = true;
+                    return value;
+                }
+                value = value * 10 + digit;
+                pos++;
+            }
+            return value;
+        }
+
+        private void expect(char c) {
+            if (pos < end && buffer.get(pos) == c) {
+                pos++;
+            } else {
+                error = true;
+            }
+        }
+
+        private double parseDouble() {
+            int fieldStart = pos;
+            boolean negative = false;
+            if (pos < end && buffer.get(pos) == '-') {
+                negative = true;
+                pos++;
+            }
+            long mantissa = 0;
+            int significant = 0;
+            int fractionDigits = 0;
+            int integerOverflow = 0;
+            boolean seenDot = false;
+            boolean seenDigit = false;
+            while (pos < end) {
+                byte b = buffer.get(pos);
+                if (b >= '0' && b <= '9') {
+                    seenDigit = true;
+                    if (significant < 18) {
+                        mantissa = mantissa * 10 + (b - '0');
+                        if (mantissa != 0) {
+                            significant++;
+                        }
+                        if (seenDot) {
+                            fractionDigits++;
+                        }
+                    } else if (!seenDot) {
+                        integerOverflow++;
+                    }
+                } else if (b == '.' && !seenDot) {
+                    seenDot = true;
+                } else {
+                    break;
+                }
+                pos++;
+            }
+            if (!seenDigit) {
+                error = true;
+                return 0;
+            }
+            if (fractionDigits >= POW10.length) {
+                // Leading fraction zeros pushed the digits past the table; rare, so parse the text
+                return Double.parseDouble(text(fieldStart, pos));
+            }
+            double value = integerOverflow > 0
+                    ? mantissa * Math.pow(10, integerOverflow)
+                    : mantissa / POW10[fractionDigits];
+            return negative ? -value : value;
+        }
+
+        private String text(int from, int to) {
+            char[] chars = new char[to - from];
+            for (int i = from; i < to; i++) {
+                chars[i - from] = (char) buffer.get(i);
+            }
+            return new String(chars);
+        }
+
+        private int parseInt() {
+            boolean negative = false;
+            if (pos < end && buffer.get(pos) == '-') {
+                negative = true;
+                pos++;
+            }
+            long value = 0;
+            boolean seenDigit = false;
+            while (pos < end) {
+                int digit = buffer.get(pos) - '0';
+                if (digit < 0 || digit > 9) {
+                    break;
+                }
+                seenDigit = true;
+                value = value * 10 + digit;
+                if (value > Integer.MAX_VALUE) {
+                    error = true;
+                }
+                pos++;
+            }
+            if (!seenDigit) {
+                error = true;
+            }
+            return (int) (negative ? -value : value);
+        }
+
+        private void reportBadLine(int lineStart) {
+            int lineEnd = lineStart;
+            while (lineEnd < end && buffer.get(lineEnd) != '\n' && buffer.get(lineEnd) != '\r') {
+                lineEnd++;
+            }
+            byte[] line = new byte[lineEnd - lineStart];
+            buffer.get(lineStart, line);
+            System.err.println("Error parsing line: " + new String(line, StandardCharsets.UTF_8));
+        }
+    }
+}
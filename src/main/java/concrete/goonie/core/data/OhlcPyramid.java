@@ -0,0 +1,362 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.datatypes.CandleData;
+
+import java.util.Arrays;
+
+/**
+ * Multi-level OHLC aggregation over a {@link CandleData}.
+ * <p>
+ * Level {@code k} merges {@code 2^k} consecutive bars into one: entry {@code j} covers bars
+ * {@code [j * 2^k, (j + 1) * 2^k)} and keeps the first open, the last close and the exact
+ * highest high and lowest low of that span. Level 0 is the source itself and is not stored;
+ * the stored levels together take about as much memory as the source's four price columns.
+ * <p>
+ * {@link #sync()} brings the pyramid up to date with the source. It only recomputes the
+ * entries covering bars appended (or the last bar updated) since the previous call, so it is
+ * cheap enough to call once per frame. Readers get immutable {@link Level} snapshots; a sync
+ * running concurrently may at most change the values of a level's last entry under them.
+ * <p>
+ * The levels double as an implicit segment tree: {@link #findExtremes(int, int, double[])}
+ * answers lowest-low/highest-high queries over any bar range by touching at most two entries
+ * per level, without any memory beyond the pyramid itself.
+ * <p>
+ * For histories paged in from disk the finest levels can be left out: levels below
+ * {@code firstStoredLevel} keep no arrays and compute each entry from its source bars when
+ * read, which costs at most {@code 2^(firstStoredLevel - 1)} bars per entry. The stored levels
+ * then take {@code 2^(firstStoredLevel - 1)} times less memory.
+ */
+public class OhlcPyramid {
+    /**
+     * First level worth storing over a compact source (paged or compressed): 32 bars per
+     * entry, a summary of one byte per bar, while a level below reads at most 16 bars per entry.
+     */
+    public static final int COMPACT_FIRST_STORED_LEVEL = 5;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final CandleData source;
+    private final int firstStoredLevel;
+    private volatile Level[] levels = new Level[0];
+    private volatile int syncedBars;
+
+    public OhlcPyramid(CandleData source) {
+        this(source, 1);
+    }
+
+    /**
+     * Creates a pyramid that only stores levels {@code firstStoredLevel} and up.
+     */
+    public OhlcPyramid(CandleData source, int firstStoredLevel) {
+        if (firstStoredLevel < 1 || firstStoredLevel > 30) {
+            throw new IllegalArgumentException("First stored level must be between 1 and 30: " + firstStoredLevel);
+        }
+        this.source = source;
+        this.firstStoredLevel = firstStoredLevel;
+    }
+
+    public CandleData getSource() {
+        return source;
+    }
+
+    /**
+     * One aggregation level. The arrays may be longer than {@link #count()}; a level that is not
+     * stored has none and reads its entries from the source bars instead.
+     */
+    public static final class Level {
+        private final int shift;
+        private final int count;
+        final double[] open;
+        final double[] high;
+        final double[] low;
+        final double[] close;
+        private final CandleData source; // Only for levels that are not stored
+        private final int bars;
+        private final int pinned; // Entry read from the copies below instead of the arrays, or -1
+        private final double pinnedOpen;
+        private final double pinnedHigh;
+        private final double pinnedLow;
+        private final double pinnedClose;
+
+        private Level(int shift, int count, double[] open, double[] high, double[] low, double[] close) {
+            this.shift = shift;
+            this.count = count;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.source = null;
+            this.bars = 0;
+            this.pinned = -1;
+            this.pinnedOpen = this.pinnedHigh = this.pinnedLow = this.pinnedClose = 0;
+        }
+
+        private Level(int shift, CandleData source, int bars) {
+            this.shift = shift;
+            this.count = ((bars - 1) >> shift) + 1;
+            this.open = this.high = this.low = this.close = null;
+            this.source = source;
+            this.bars = bars;
+            this.pinned = -1;
+            this.pinnedOpen = this.pinnedHigh = this.pinnedLow = this.pinnedClose = 0;
+        }
+
+        private Level(Level level) {
+            this.shift = level.shift;
+            this.count = level.count;
+            this.open = level.open;
+            this.high = level.high;
+            this.low = level.low;
+            this.close = level.close;
+            this.source = null;
+            this.bars = 0;
+            this.pinned = count - 1;
+            this.pinnedOpen = level.getOpen(pinned);
+            this.pinnedHigh = level.getHigh(pinned);
+            this.pinnedLow = level.getLow(pinned);
+            this.pinnedClose = level.getClose(pinned);
+        }
+
+        /**
+         * Returns this level as it is now, for a reader on another thread than the one syncing
+         * the pyramid. A sync only ever rewrites a level's last entry in place, so the snapshot
+         * copies that entry and shares the rest. A level that is not stored reads its entries
+         * from {@code bars} instead, a snapshot of the source such as a
+         * {@link concrete.goonie.datatypes.CandleSnapshot}.
+         */
+        public Level snapshot(CandleData bars) {
+            if (open == null) {
+                return new Level(shift, bars, Math.min(this.bars, bars.size()));
+            }
+            return new Level(this);
+        }
+
+        /** Number of source bars merged into one entry, as a power of two. */
+        public int shift() { return shift; }
+        public int count() { return count; }
+
+        public double getOpen(int index) {
+            if (index == pinned) {
+                return pinnedOpen;
+            }
+            return open != null ? open[index] : source.getOpen(index << shift);
+        }
+
+        public double getClose(int index) {
+            if (index == pinned) {
+                return pinnedClose;
+            }
+            return close != null ? close[index] : source.getClose(lastBar(index));
+        }
+
+        public double getHigh(int index) {
+            if (index == pinned) {
+                return pinnedHigh;
+            }
+            if (high != null) {
+                return high[index];
+            }
+            double value = Double.NEGATIVE_INFINITY;
+            for (int i = index << shift, last = lastBar(index); i <= last; i++) {
+                value = Math.max(value, source.getHigh(i));
+            }
+            return value;
+        }
+
+        public double getLow(int index) {
+            if (index == pinned) {
+                return pinnedLow;
+            }
+            if (low != null) {
+                return low[index];
+            }
+            double value = Double.POSITIVE_INFINITY;
+            for (int i = index << shift, last = lastBar(index); i <= last; i++) {
+                value = Math.min(value, source.getLow(i));
+            }
+            return value;
+        }
+
+        private int lastBar(int index) {
+            return Math.min((index + 1) << shift, bars) - 1;
+        }
+
+        private Level withCount(int newCount) {
+            if (newCount <= open.length) {
+                return new Level(shift, newCount, open, high, low, close);
+            }
+            int capacity = Math.max(newCount, open.length + (open.length >> 1));
+            return new Level(shift, newCount, Arrays.copyOf(open, capacity), Arrays.copyOf(high, capacity),
+                    Arrays.copyOf(low, capacity), Arrays.copyOf(close, capacity));
+        }
+    }
+
+    /**
+     * Number of stored levels; level {@code k} for {@code 1 <= k <= levelCount()} is available.
+     */
+    public int levelCount() {
+        return levels.length;
+    }
+
+    /**
+     * Returns level {@code k} ({@code k >= 1}), or {@code null} if the source is too short to
+     * have it.
+     */
+    public Level getLevel(int k) {
+        Level[] current = levels;
+        return k >= 1 && k <= current.length ? current[k - 1] : null;
+    }
+
+    /**
+     * Finds the lowest low and highest high of bars {@code from..to} (inclusive, clamped to the
+     * bars covered by the last {@link #sync()}) and stores them in {@code minMax[0]} and
+     * {@code minMax[1]}.
+     *
+     * @return {@code false} if the range holds no bars
+     */
+    public boolean findExtremes(int from, int to, double[] minMax) {
+        int size = syncedBars;
+        Level[] current = levels;
+        int lo = Math.max(0, from);
+        int hi = Math.min(size - 1, to);
+        if (lo > hi) {
+            return false;
+        }
+
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        // Level 0 is the source: peel off unaligned ends, then climb while the range is non-empty
+        if ((lo & 1) == 1) {
+            min = Math.min(min, source.getLow(lo));
+            max = Math.max(max, source.getHigh(lo));
+            lo++;
+        }
+        if ((hi & 1) == 0 && lo <= hi) {
+            min = Math.min(min, source.getLow(hi));
+            max = Math.max(max, source.getHigh(hi));
+            hi--;
+        }
+        lo >>= 1;
+        hi >>= 1;
+
+        for (int k = 1; lo <= hi; k++) {
+            Level level = current[k - 1];
+            if (k == current.length) {
+                // Top level: whatever is left fits in a handful of entries
+                for (int j = lo; j <= hi; j++) {
+                    min = Math.min(min, level.getLow(j));
+                    max = Math.max(max, level.getHigh(j));
+                }
+                break;
+            }
+            if ((lo & 1) == 1) {
+                min = Math.min(min, level.getLow(lo));
+                max = Math.max(max, level.getHigh(lo));
+                lo++;
+            }
+            if ((hi & 1) == 0 && lo <= hi) {
+                min = Math.min(min, level.getLow(hi));
+                max = Math.max(max, level.getHigh(hi));
+                hi--;
+            }
+            lo >>= 1;
+            hi >>= 1;
+        }
+
+        minMax[0] = min;
+        minMax[1] = max;
+        return true;
+    }
+
+    /**
+     * Folds bars appended to the source since the last call into every level. The entries that
+     * cover the previously last bar are recomputed too, since a live feed may have updated it.
+     */
+    public void sync() {
+        sync(source);
+    }
+
+    /**
+     * Like {@link #sync()}, but reads the new bars through {@code bars}, which must hold the
+     * same bars as the source: e.g. a reader of a paged history that does not fill its cache.
+     */
+    public synchronized void sync(CandleData bars) {
+        int size = source.size();
+        if (size == 0) {
+            return;
+        }
+        int from = Math.max(0, Math.min(syncedBars, size) - 1);
+
+        Level[] current = levels;
+        int levelCount = 32 - Integer.numberOfLeadingZeros(size - 1); // ceil(log2(size))
+        if (size == syncedBars && current.length == levelCount) {
+            // Nothing appended: refresh the chain above the last bar in place, allocation free
+            for (int k = firstStoredLevel; k <= levelCount; k++) {
+                Level level = current[k - 1];
+                int last = level.count - 1;
+                if (k == firstStoredLevel) {
+                    aggregateSource(bars, level, last, size);
+                } else {
+                    aggregateLevel(current[k - 2], level, last);
+                }
+            }
+            return;
+        }
+        Level[] updated = Arrays.copyOf(current, Math.max(current.length, levelCount));
+
+        for (int k = 1; k <= levelCount; k++) {
+            if (k < firstStoredLevel) {
+                updated[k - 1] = new Level(k, source, size);
+                continue;
+            }
+            int count = ((size - 1) >> k) + 1;
+            Level previous = updated[k - 1];
+            Level level = previous != null
+                    ? previous.withCount(count)
+                    : new Level(k, count, new double[Math.max(INITIAL_CAPACITY, count)],
+                    new double[Math.max(INITIAL_CAPACITY, count)], new double[Math.max(INITIAL_CAPACITY, count)],
+                    new double[Math.max(INITIAL_CAPACITY, count)]);
+
+            int firstEntry = previous == null ? 0 : from >> k;
+            if (k == firstStoredLevel) {
+                aggregateSource(bars, level, firstEntry, size);
+            } else {
+                aggregateLevel(updated[k - 2], level, firstEntry);
+            }
+            updated[k - 1] = level;
+        }
+
+        levels = updated;
+        syncedBars = size;
+    }
+
+    private static void aggregateSource(CandleData bars, Level level, int firstEntry, int size) {
+        int span = 1 << level.shift;
+        for (int j = firstEntry; j < level.count; j++) {
+            int a = j << level.shift;
+            int b = Math.min(a + span, size) - 1;
+            double high = bars.getHigh(a);
+            double low = bars.getLow(a);
+            for (int i = a + 1; i <= b; i++) {
+                high = Math.max(high, bars.getHigh(i));
+                low = Math.min(low, bars.getLow(i));
+            }
+            level.open[j] = bars.getOpen(a);
+            level.close[j] = bars.getClose(b);
+            level.high[j] = high;
+            level.low[j] = low;
+        }
+    }
+
+    private static void aggregateLevel(Level finer, Level level, int firstEntry) {
+        for (int j = firstEntry; j < level.count; j++) {
+            int a = j << 1;
+            int b = Math.min(a + 1, finer.count - 1);
+            level.open[j] = finer.open[a];
+            level.close[j] = finer.close[b];
+            level.high[j] = Math.max(finer.high[a], finer.high[b]);
+            level.low[j] = Math.min(finer.low[a], finer.low[b]);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.datatypes.CandleData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * {@link CandleData} over a {@link CandleFile} that is read in fixed size chunks of bars on
+ * demand and kept in a {@link ChunkCache}, for histories too long for the heap.
+ * <p>
+ * Chunk {@code c} holds bars {@code [c * chunkBars, (c + 1) * chunkBars)} in the file's fixed
+ * point columns. An accessor looks its chunk up in the cache only when it moves to another
+ * chunk than the previous access; render loops walk bars in order, so nearly every access is
+ * an array read. A chunk that is not cached is read from the file on the calling thread;
+ * {@link #prefetch(int, int)} loads chunks ahead of time so that rarely happens while panning.
+ * <p>
+ * Safe to read from any thread. {@link #close()} closes the file and drops the cached chunks.
+ */
+public class PagedCandleSeries implements CandleData, Closeable {
+    public static final int DEFAULT_CHUNK_BARS = 1 << 14;
+
+    private final String symbol;
+    private final ENUM_TIMEFRAME timeframe;
+    private final int size;
+    private final double priceScale;
+    private final FileChannel channel;
+    private final long timeOffset;
+    private final long intOffset;
+    private final ChunkCache cache;
+    private final int chunkShift;
+    private final int chunkMask;
+    private volatile Chunk recent; // Last chunk read, to skip the cache on the next access
+    private volatile boolean closed;
+
+    /**
+     * The bars of one chunk, immutable once read.
+     */
+    static final class Chunk {
+        final int index;
+        final long[] time;
+        final int[] open;
+        final int[] high;
+        final int[] low;
+        final int[] close;
+        final int[] tickVolume;
+        final int[] volume;
+        final int[] spread;
+
+        Chunk(int index, int count) {
+            this.index = index;
+            this.time = new long[count];
+            this.open = new int[count];
+            this.high = new int[count];
+            this.low = new int[count];
+            this.close = new int[count];
+            this.tickVolume = new int[count];
+            this.volume = new int[count];
+            this.spread = new int[count];
+        }
+
+        long bytes() {
+            return (long) time.length * (Long.BYTES + 7 * Integer.BYTES);
+        }
+    }
+
+    PagedCandleSeries(String symbol, ENUM_TIMEFRAME timeframe, int size, long priceScale, FileChannel channel,
+                      long columnsOffset, ChunkCache cache, int chunkBars) {
+        this.symbol = symbol;
+        this.timeframe = timeframe;
+        this.size = size;
+        this.priceScale = priceScale;
+        this.channel = channel;
+        this.timeOffset = columnsOffset;
+        this.intOffset = columnsOffset + (long) size * Long.BYTES;
+        this.cache = cache;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkBars);
+        this.chunkMask = chunkBars - 1;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public ENUM_TIMEFRAME getTimeframe() {
+        return timeframe;
+    }
+
+    public double getPriceScale() {
+        return priceScale;
+    }
+
+    public ChunkCache getCache() {
+        return cache;
+    }
+
+    public int getChunkBars() {
+        return chunkMask + 1;
+    }
+
+    public int getChunkCount() {
+        return (size + chunkMask) >>> chunkShift;
+    }
+
+    /**
+     * Starts loading, in the background, the chunks holding bars {@code firstBar..lastBar}
+     * that are not cached yet. Bars outside the history are ignored.
+     */
+    public void prefetch(int firstBar, int lastBar) {
+        int from = Math.max(0, firstBar);
+        int to = Math.min(size - 1, lastBar);
+        if (from > to || closed) {
+            return;
+        }
+        for (int chunk = from >>> chunkShift; chunk <= to >>> chunkShift; chunk++) {
+            cache.prefetch(this, chunk);
+        }
+    }
+
+    /**
+     * Returns a reader of these bars that reads each chunk it moves to straight from the file,
+     * without the cache. For one pass over the whole history on a single thread, such as
+     * building its pyramid, which through the cache would evict the chunks other series use.
+     */
+    CandleData readDirectly() {
+        return new DirectReader();
+    }
+
+    private Chunk chunk(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Bar " + index + " of " + size);
+        }
+        Chunk chunk = recent;
+        if (chunk == null || chunk.index != index >>> chunkShift) {
+            chunk = cache.get(this, index >>> chunkShift);
+            recent = chunk;
+        }
+        return chunk;
+    }
+
+    /**
+     * Reads chunk {@code index} from the file, one positional read per column.
+     */
+    Chunk readChunk(int index) throws IOException {
+        int first = index << chunkShift;
+        int count = Math.min(chunkMask + 1, size - first);
+        Chunk chunk = new Chunk(index, count);
+        ByteBuffer buffer = ByteBuffer.allocate(count * Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+        read(buffer, timeOffset + (long) first * Long.BYTES, count * Long.BYTES);
+        buffer.asLongBuffer().get(chunk.time);
+        int[][] columns = {chunk.open, chunk.high, chunk.low, chunk.close, chunk.tickVolume, chunk.volume,
+                chunk.spread};
+        for (int column = 0; column < columns.length; column++) {
+            long position = intOffset + ((long) column * size + first) * Integer.BYTES;
+            read(buffer, position, count * Integer.BYTES);
+            buffer.asIntBuffer().get(columns[column]);
+        }
+        return chunk;
+    }
+
+    private void read(ByteBuffer buffer, long position, int length) throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Candle file ends before bar data at " + position);
+            }
+        }
+        buffer.flip();
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        recent = null;
+        cache.removeAll(this);
+        channel.close();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getTime(int index) {
+        return chunk(index).time[index & chunkMask];
+    }
+
+    @Override
+    public double getOpen(int index) {
+        return chunk(index).open[index & chunkMask] / priceScale;
+    }
+
+    @Override
+    public double getHigh(int index) {
+        return chunk(index).high[index & chunkMask] / priceScale;
+    }
+
+    @Override
+    public double getLow(int index) {
+        return chunk(index).low[index & chunkMask] / priceScale;
+    }
+
+    @Override
+    public double getClose(int index) {
+        return chunk(index).close[index & chunkMask] / priceScale;
+    }
+
+    @Override
+    public int getTickVolume(int index) {
+        return chunk(index).tickVolume[index & chunkMask];
+    }
+
+    @Override
+    public int getVolume(int index) {
+        return chunk(index).volume[index & chunkMask];
+    }
+
+    @Override
+    public int getSpread(int index) {
+        return chunk(index).spread[index & chunkMask];
+    }
+
+    private final class DirectReader implements CandleData {
+        private Chunk current;
+
+        private Chunk chunk(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Bar " + index + " of " + size);
+            }
+            if (current == null || current.index != index >>> chunkShift) {
+                try {
+                    current = readChunk(index >>> chunkShift);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return current;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public long getTime(int index) {
+            return chunk(index).time[index & chunkMask];
+        }
+
+        @Override
+        public double getOpen(int index) {
+            return chunk(index).open[index & chunkMask] / priceScale;
+        }
+
+        @Override
+        public double getHigh(int index) {
+            return chunk(index).high[index & chunkMask] / priceScale;
+        }
+
+        @Override
+        public double getLow(int index) {
+            return chunk(index).low[index & chunkMask] / priceScale;
+        }
+
+        @Override
+        public double getClose(int index) {
+            return chunk(index).close[index & chunkMask] / priceScale;
+        }
+
+        @Override
+        public int getTickVolume(int index) {
+            return chunk(index).tickVolume[index & chunkMask];
+        }
+
+        @Override
+        public int getVolume(int index) {
+            return chunk(index).volume[index & chunkMask];
+        }
+
+        @Override
+        public int getSpread(int index) {
+            return chunk(index).spread[index & chunkMask];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "PagedCandleSeries{" +
+                "symbol=" + symbol +
+                ", timeframe=" + timeframe +
+                ", size=" + size +
+                '}';
+    }
+}
@@ -0,0 +1,215 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.datatypes.CandleData;
+import concrete.goonie.datatypes.CandleSeries;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Builds coarser timeframes from a finer base history, e.g. H4, D1 or MN1 bars from M1 bars.
+ * <p>
+ * A derived bar covers one period of its timeframe in UTC: fixed length periods start at
+ * multiples of their length since the epoch, so they line up with midnight, weeks start on
+ * Sunday and months on the first. It takes the open of the first base bar in the period, the
+ * close and spread of the last, the highest high, the lowest low and the summed volumes.
+ * Periods without base bars produce no bar.
+ * <p>
+ * Each requested timeframe is built once in a single pass over the base and then kept. Every
+ * later {@link #get} or {@link #sync()} only folds in the base bars appended since, plus the
+ * last base bar again, since a live feed may still be changing it. Asking for the base
+ * timeframe itself returns the base, without a copy.
+ * <p>
+ * The derived series have a single writer, this resampler, and can be read from any thread
+ * like any other {@link CandleSeries}.
+ */
+public final class Resampler {
+    private static final long SECONDS_PER_DAY = 86_400;
+
+    private final CandleData base;
+    private final ENUM_TIMEFRAME baseTimeframe;
+    private final Map<ENUM_TIMEFRAME, Derived> derived = new EnumMap<>(ENUM_TIMEFRAME.class);
+
+    public Resampler(CandleData base, ENUM_TIMEFRAME baseTimeframe) {
+        if (baseTimeframe.getDuration().isZero()) {
+            throw new IllegalArgumentException("Base timeframe has no fixed period: " + baseTimeframe);
+        }
+        this.base = base;
+        this.baseTimeframe = baseTimeframe;
+    }
+
+    public CandleData getBase() {
+        return base;
+    }
+
+    public ENUM_TIMEFRAME getBaseTimeframe() {
+        return baseTimeframe;
+    }
+
+    /**
+     * Whether bars of {@code to} can be built from bars of {@code from}: every period of
+     * {@code to} has to be made of whole periods of {@code from}.
+     */
+    public static boolean canResample(ENUM_TIMEFRAME from, ENUM_TIMEFRAME to) {
+        long fromSeconds = from.getDuration().getSeconds();
+        long toSeconds = to.getDuration().getSeconds();
+        if (fromSeconds == 0 || toSeconds == 0 || SECONDS_PER_DAY % fromSeconds != 0) {
+            return from == to && fromSeconds != 0;
+        }
+        if (to == ENUM_TIMEFRAME.PERIOD_W1 || to == ENUM_TIMEFRAME.PERIOD_MN1) {
+            return true; // Calendar periods start at midnight, and so does a period of any from
+        }
+        return toSeconds % fromSeconds == 0 && SECONDS_PER_DAY % toSeconds == 0;
+    }
+
+    /**
+     * Returns the bars of {@code timeframe}, building them on first use and bringing them up
+     * to date with the base otherwise.
+     *
+     * @throws IllegalArgumentException if {@code timeframe} cannot be built from the base
+     */
+    public synchronized CandleData get(ENUM_TIMEFRAME timeframe) {
+        if (timeframe == baseTimeframe) {
+            return base;
+        }
+        Derived bars = derived.get(timeframe);
+        if (bars == null) {
+            if (!canResample(baseTimeframe, timeframe)) {
+                throw new IllegalArgumentException("Cannot build " + timeframe + " bars from " + baseTimeframe);
+            }
+            long ratio = timeframe.getDuration().getSeconds() / baseTimeframe.getDuration().getSeconds();
+            bars = new Derived(timeframe, (int) Math.min(Integer.MAX_VALUE - 8, base.size() / ratio + 16));
+            derived.put(timeframe, bars);
+        }
+        bars.sync(base);
+        return bars.series;
+    }
+
+    /**
+     * Folds the base bars appended since the last call into every timeframe built so far.
+     */
+    public synchronized void sync() {
+        for (Derived bars : derived.values()) {
+            bars.sync(base);
+        }
+    }
+
+    /**
+     * Start of the period of {@code timeframe} holding {@code time}, both in epoch seconds.
+     */
+    public static long periodStart(long time, ENUM_TIMEFRAME timeframe) {
+        long day = Math.floorDiv(time, SECONDS_PER_DAY);
+        switch (timeframe) {
+            case PERIOD_W1:
+                return (day - Math.floorMod(day + 4, 7)) * SECONDS_PER_DAY; // Day 0 was a Thursday
+            case PERIOD_MN1:
+                return LocalDate.ofEpochDay(day).withDayOfMonth(1).toEpochDay() * SECONDS_PER_DAY;
+            default:
+                long seconds = timeframe.getDuration().getSeconds();
+                return Math.floorDiv(time, seconds) * seconds;
+        }
+    }
+
+    /**
+     * End, exclusive, of the period of {@code timeframe} that starts at {@code start}.
+     */
+    public static long periodEnd(long start, ENUM_TIMEFRAME timeframe) {
+        if (timeframe == ENUM_TIMEFRAME.PERIOD_MN1) {
+            return LocalDate.ofEpochDay(Math.floorDiv(start, SECONDS_PER_DAY)).plusMonths(1).toEpochDay()
+                    * SECONDS_PER_DAY;
+        }
+        return start + timeframe.getDuration().getSeconds();
+    }
+
+    /**
+     * One derived timeframe and how far it has been folded.
+     * <p>
+     * The last derived bar is the open period. The base bars of that period before
+     * {@code nextBar} are final and summed up in the {@code partial*} fields; bar
+     * {@code nextBar} is the one that may still change and is folded again on every sync.
+     * While folding, a period is summed up in locals and written to the series once, when
+     * the next period starts or the base runs out.
+     */
+    private static final class Derived {
+        final ENUM_TIMEFRAME timeframe;
+        final CandleSeries series;
+        long periodStart;
+        long periodEnd = Long.MIN_VALUE;
+        boolean written; // Whether the series already holds a bar for the open period
+        int nextBar;
+
+        int partialCount;
+        double partialOpen, partialHigh, partialLow;
+        long partialTickVolume, partialVolume;
+
+        Derived(ENUM_TIMEFRAME timeframe, int capacity) {
+            this.timeframe = timeframe;
+            this.series = new CandleSeries(capacity);
+        }
+
+        void sync(CandleData base) {
+            int size = base.size();
+            if (size <= nextBar) {
+                return;
+            }
+            int count = partialCount;
+            double open = partialOpen, high = partialHigh, low = partialLow, close = 0;
+            long tickVolume = partialTickVolume, volume = partialVolume;
+            int spread = 0;
+
+            for (int i = nextBar; i < size; i++) {
+                long time = base.getTime(i);
+                if (time >= periodEnd) {
+                    // First bar of a new period: write out the one before it
+                    if (count > 0) {
+                        write(open, high, low, close, tickVolume, volume, spread);
+                    }
+                    periodStart = periodStart(time, timeframe);
+                    periodEnd = periodEnd(periodStart, timeframe);
+                    written = false;
+                    count = 0;
+                }
+                if (i == size - 1) {
+                    // The last base bar may still change; remember the period without it
+                    partialCount = count;
+                    partialOpen = open;
+                    partialHigh = high;
+                    partialLow = low;
+                    partialTickVolume = tickVolume;
+                    partialVolume = volume;
+                }
+                if (count == 0) {
+                    open = base.getOpen(i);
+                    high = base.getHigh(i);
+                    low = base.getLow(i);
+                    tickVolume = base.getTickVolume(i);
+                    volume = base.getVolume(i);
+                } else {
+                    high = Math.max(high, base.getHigh(i));
+                    low = Math.min(low, base.getLow(i));
+                    tickVolume += base.getTickVolume(i);
+                    volume += base.getVolume(i);
+                }
+                close = base.getClose(i);
+                spread = base.getSpread(i);
+                count++;
+            }
+            write(open, high, low, close, tickVolume, volume, spread);
+            nextBar = size - 1;
+        }
+
+        private void write(double open, double high, double low, double close, long tickVolume, long volume,
+                           int spread) {
+            int ticks = (int) Math.min(Integer.MAX_VALUE, tickVolume);
+            int lots = (int) Math.min(Integer.MAX_VALUE, volume);
+            if (written) {
+                series.updateLast(open, high, low, close, ticks, lots, spread);
+            } else {
+                series.add(periodStart, open, high, low, close, ticks, lots, spread);
+                written = true;
+            }
+        }
+    }
+}
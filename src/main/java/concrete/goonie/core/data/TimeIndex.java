@@ -0,0 +1,170 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.datatypes.CandleData;
+
+/**
+ * Maps between bar indices and bar times of a {@link CandleData}, whose time column is sorted
+ * ascending. Bars are not assumed to be evenly spaced: weekends, holidays and missing bars
+ * simply leave gaps in the time column, and lookups find the bars that are actually there.
+ * <p>
+ * Time to bar lookups are binary searches over the time column, O(log n) even for tens of
+ * millions of bars. {@link #interpolationFloorIndex(long)} guesses the position from the time
+ * instead, which needs far fewer probes on evenly spaced history, and falls back to halving the
+ * range whenever a guess does not, so it never takes more than about twice the binary probes.
+ * <p>
+ * The index keeps no copy of the times and reads {@link CandleData#size()} on every call, so it
+ * stays valid while the series grows.
+ */
+public final class TimeIndex {
+    private final CandleData data;
+    private final long barSeconds;
+
+    public TimeIndex(CandleData data, ENUM_TIMEFRAME timeframe) {
+        this.data = data;
+        this.barSeconds = Math.max(1, timeframe.getDuration().getSeconds());
+    }
+
+    public CandleData getSource() {
+        return data;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    /**
+     * Time of bar {@code bar}. Bars before the first and after the last loaded bar are
+     * extrapolated one timeframe apart, so the axis can label the empty space around the
+     * history. Requires at least one bar.
+     */
+    public long timeAt(long bar) {
+        int size = data.size();
+        if (size == 0) {
+            throw new IllegalStateException("No bars loaded");
+        }
+        if (bar < 0) {
+            return data.getTime(0) + bar * barSeconds;
+        }
+        if (bar >= size) {
+            return data.getTime(size - 1) + (bar - size + 1) * barSeconds;
+        }
+        return data.getTime((int) bar);
+    }
+
+    /**
+     * Index of the last bar at or before {@code time}, or {@code -1} if every bar is later.
+     */
+    public int floorIndex(long time) {
+        int size = data.size();
+        if (size == 0 || time < data.getTime(0)) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = size - 1;
+        if (time >= data.getTime(hi)) {
+            return hi;
+        }
+        // time(lo) <= time < time(hi)
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (data.getTime(mid) <= time) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Index of the first bar at or after {@code time}, or {@link #size()} if every bar is
+     * earlier.
+     */
+    public int ceilingIndex(long time) {
+        int size = data.size();
+        if (size == 0 || time <= data.getTime(0)) {
+            return 0;
+        }
+        int lo = 0;
+        int hi = size - 1;
+        if (time > data.getTime(hi)) {
+            return size;
+        }
+        // time(lo) < time <= time(hi), so hi ends on the first of any repeated times
+        while (hi - lo > 1) {
+            int mid = (lo + hi) >>> 1;
+            if (data.getTime(mid) < time) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    /**
+     * Index of a bar at exactly {@code time}, or {@code -(insertion point) - 1} if there is
+     * none, as {@link java.util.Arrays#binarySearch(long[], long)} reports it.
+     */
+    public int indexOf(long time) {
+        int floor = floorIndex(time);
+        if (floor >= 0 && data.getTime(floor) == time) {
+            return floor;
+        }
+        return -(floor + 1) - 1;
+    }
+
+    /**
+     * Same result as {@link #floorIndex(long)}, found by interpolation search.
+     */
+    public int interpolationFloorIndex(long time) {
+        int size = data.size();
+        if (size == 0 || time < data.getTime(0)) {
+            return -1;
+        }
+        int lo = 0;
+        int hi = size - 1;
+        long loTime = data.getTime(lo);
+        long hiTime = data.getTime(hi);
+        if (time >= hiTime) {
+            return hi;
+        }
+        // time(lo) <= time < time(hi)
+        while (hi - lo > 1) {
+            int span = hi - lo;
+            int probe = lo + (int) ((double) (time - loTime) / (hiTime - loTime) * span);
+            probe = Math.max(lo + 1, Math.min(hi - 1, probe));
+            long probeTime = data.getTime(probe);
+            if (probeTime <= time) {
+                lo = probe;
+                loTime = probeTime;
+            } else {
+                hi = probe;
+                hiTime = probeTime;
+            }
+
+            // A guess that did not halve the range is followed by a bisection step
+            if (hi - lo > span / 2 && hi - lo > 1) {
+                int mid = (lo + hi) >>> 1;
+                long midTime = data.getTime(mid);
+                if (midTime <= time) {
+                    lo = mid;
+                    loTime = midTime;
+                } else {
+                    hi = mid;
+                    hiTime = midTime;
+                }
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString() {
+        return "TimeIndex{" +
+                "size=" + data.size() +
+                ", barSeconds=" + barSeconds +
+                '}';
+    }
+}
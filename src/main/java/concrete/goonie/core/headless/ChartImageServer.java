@@ -0,0 +1,416 @@
+package concrete.goonie.core.headless;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import concrete.goonie.ChartConfig;
+import concrete.goonie.ChartThemes;
+import concrete.goonie.core.Chart;
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.DatasetKey;
+import concrete.goonie.core.data.DatasetRegistry;
+import concrete.goonie.core.data.Resampler;
+import concrete.goonie.core.data.TimeIndex;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Small HTTP service that renders chart images with the {@link HeadlessChartEngine}, so pages
+ * can embed charts without a desktop JVM per user.
+ * <p>
+ * {@code GET /chart.png?symbol=Boom&tf=H1&from=2024-01-01&to=2024-01-08T12:00&w=800&h=450&theme=dark}
+ * answers with a PNG. {@code from} and {@code to} are bar times, as ISO dates or date-times in
+ * the time of the history, and are mapped to bars with the dataset's {@link Dataset#getTimeIndex()
+ * time index}: the chart shows the bars from the first at or after {@code from} to the last at
+ * or before {@code to}. Given only one of them, the chart shows {@code bars} bars from or up to
+ * it; given neither, the last {@code bars}, {@value #DEFAULT_BARS} unless set. {@code tf}
+ * accepts {@code H1} as well as {@code PERIOD_H1}.
+ * <p>
+ * Only datasets added with {@link #register(DatasetKey)} are served, so a request can never
+ * name a file to load. A timeframe that was not registered is built from a registered finer
+ * one of the same symbol with {@link Dataset#resample}, e.g. D1 charts from M1 history. They
+ * are taken from the shared {@link DatasetRegistry} and held until {@link #stop()}.
+ * <p>
+ * Every request runs on its own virtual thread. Images of fully loaded datasets are kept in a
+ * bounded LRU cache keyed by the normalized request, so a dashboard polling the same chart
+ * costs one render. Images of live datasets are cached per
+ * {@linkplain Dataset#getVersion() version} and sent with {@code Cache-Control: no-cache}.
+ * Renders themselves are limited to one per core at a time, which also caps the memory taken
+ * by image buffers; a request that cannot start its render within
+ * {@value #RENDER_WAIT_SECONDS} seconds is answered with 503.
+ * <p>
+ * {@link #ChartImageServer(int)} listens on the loopback address only; pass another address
+ * to {@link #ChartImageServer(InetSocketAddress, int)} to serve other hosts.
+ */
+public class ChartImageServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_CACHE_SIZE = 256;
+    public static final int DEFAULT_BARS = 120;
+    private static final int DEFAULT_WIDTH = 800;
+    private static final int DEFAULT_HEIGHT = 450;
+    private static final int MAX_SIZE = 4096;
+    private static final int MAX_BARS = 100_000;
+    private static final long LOAD_TIMEOUT_SECONDS = 30;
+    private static final long RENDER_WAIT_SECONDS = 10;
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final HeadlessChartEngine engine = new HeadlessChartEngine();
+    private final Map<String, Dataset> datasets = new ConcurrentHashMap<>(); // by symbol,timeframe
+    private final ImageCache cache;
+    private final Semaphore renders = new Semaphore(Runtime.getRuntime().availableProcessors());
+
+    public ChartImageServer(int port) throws IOException {
+        this(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), DEFAULT_CACHE_SIZE);
+    }
+
+    public ChartImageServer(InetSocketAddress address, int cacheSize) throws IOException {
+        this.cache = new ImageCache(cacheSize);
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext("/chart.png", this::handleChart);
+    }
+
+    /**
+     * Makes {@code key} available to requests for its symbol and timeframe, starting its load
+     * if no chart holds it yet.
+     */
+    public void register(DatasetKey key) {
+        datasets.computeIfAbsent(lookupKey(key.symbol(), key.timeframe()),
+                k -> DatasetRegistry.getInstance().acquire(key));
+    }
+
+    public void start() {
+        server.start();
+    }
+
+    /**
+     * Stops accepting requests, waits up to {@code delaySeconds} for running ones and releases
+     * the registered datasets.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        datasets.values().forEach(DatasetRegistry.getInstance()::release);
+        datasets.clear();
+        cache.clear();
+    }
+
+    public void stop() {
+        stop(0);
+    }
+
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public long getCacheHits() {
+        return cache.hits();
+    }
+
+    public long getCacheMisses() {
+        return cache.misses();
+    }
+
+    private void handleChart(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.getResponseHeaders().set("Allow", "GET");
+                sendText(exchange, 405, "Only GET is supported");
+                return;
+            }
+
+            ChartRequest request;
+            try {
+                request = parse(exchange.getRequestURI().getRawQuery());
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            }
+
+            Dataset dataset = findDataset(request.symbol, request.timeframe);
+            if (dataset == null) {
+                sendText(exchange, 404, "Unknown chart: " + request.symbol + "," + request.timeframe.getDescription());
+                return;
+            }
+            try {
+                dataset.whenLoaded().get(LOAD_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                dataset = dataset.resample(request.timeframe);
+            } catch (TimeoutException e) {
+                sendText(exchange, 503, "Still loading " + dataset.getKey());
+                return;
+            } catch (ExecutionException e) {
+                sendText(exchange, 500, "Failed to load " + dataset.getKey());
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            byte[] png;
+            try {
+                png = render(request, dataset);
+            } catch (IllegalArgumentException e) {
+                sendText(exchange, 400, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Cannot render " + request + ": " + e);
+                sendText(exchange, 500, "Cannot render chart");
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (png == null) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendText(exchange, 503, "Too many charts rendering, try again");
+                return;
+            }
+            exchange.getResponseHeaders().set("Content-Type", "image/png");
+            exchange.getResponseHeaders().set("Cache-Control", dataset.isLive() ? "no-cache" : "max-age=60");
+            exchange.sendResponseHeaders(200, png.length);
+            try (OutputStream body = exchange.getResponseBody()) {
+                body.write(png);
+            }
+        }
+    }
+
+    /**
+     * Returns the PNG for {@code request}, from the cache or rendered, or {@code null} if no
+     * render slot freed up in time.
+     */
+    private byte[] render(ChartRequest request, Dataset dataset) throws IOException, InterruptedException {
+        TimeIndex index = dataset.getTimeIndex();
+        int size = index.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("No bars in " + dataset.getKey());
+        }
+        int first;
+        int last;
+        if (request.from != null) {
+            first = index.ceilingIndex(request.from.toEpochSecond(ZoneOffset.UTC));
+            last = request.to != null
+                    ? index.floorIndex(request.to.toEpochSecond(ZoneOffset.UTC))
+                    : (int) Math.min(size - 1, (long) first + request.bars - 1);
+        } else {
+            last = request.to != null ? index.floorIndex(request.to.toEpochSecond(ZoneOffset.UTC)) : size - 1;
+            first = Math.max(0, last - request.bars + 1);
+        }
+        if (first > last) {
+            throw new IllegalArgumentException("No bars of " + dataset.getKey() + " between "
+                    + (request.from == null ? "the start" : request.from) + " and "
+                    + (request.to == null ? "the end" : request.to));
+        }
+
+        // Live bars change in place, so an image is only good for the version it was drawn from
+        String cacheKey = dataset.getKey() + "@" + dataset.getVersion() + "|" + first + "|" + last + "|"
+                + request.width + "x" + request.height + "|" + request.theme;
+        byte[] png = cache.get(cacheKey);
+        if (png != null) {
+            return png;
+        }
+        if (!renders.tryAcquire(RENDER_WAIT_SECONDS, TimeUnit.SECONDS)) {
+            return null;
+        }
+        try {
+            ChartConfig config = "light".equals(request.theme) ? ChartThemes.lightTheme() : ChartThemes.darkTheme();
+            png = engine.renderPng(new ChartSpec(dataset, request.timeframe, first, last, config,
+                    request.width, request.height));
+        } finally {
+            renders.release();
+        }
+        cache.put(cacheKey, png);
+        return png;
+    }
+
+    /**
+     * Returns the registered dataset of {@code symbol} in {@code timeframe}, or else one in a
+     * finer timeframe that {@code timeframe} can be resampled from, the coarsest such.
+     */
+    private Dataset findDataset(String symbol, ENUM_TIMEFRAME timeframe) {
+        Dataset exact = datasets.get(lookupKey(symbol, timeframe));
+        if (exact != null) {
+            return exact;
+        }
+        Dataset best = null;
+        for (Dataset dataset : datasets.values()) {
+            DatasetKey key = dataset.getKey();
+            if (key.symbol().equals(symbol) && Resampler.canResample(key.timeframe(), timeframe)
+                    && (best == null || key.timeframe().getDuration().compareTo(best.getKey().timeframe().getDuration()) > 0)) {
+                best = dataset;
+            }
+        }
+        return best;
+    }
+
+    private static ChartRequest parse(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery != null) {
+            for (String pair : rawQuery.split("&")) {
+                int eq = pair.indexOf('=');
+                if (eq > 0) {
+                    params.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+                            URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+                }
+            }
+        }
+
+        String symbol = params.get("symbol");
+        if (symbol == null || symbol.isEmpty()) {
+            throw new IllegalArgumentException("Missing parameter: symbol");
+        }
+        String tf = params.getOrDefault("tf", "H1");
+        String theme = params.getOrDefault("theme", "dark");
+        if (!theme.equals("dark") && !theme.equals("light")) {
+            throw new IllegalArgumentException("Unknown theme: " + theme);
+        }
+        LocalDateTime from = timeParam(params, "from");
+        LocalDateTime to = timeParam(params, "to");
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new IllegalArgumentException("from must not be after to");
+        }
+        return new ChartRequest(symbol, parseTimeframe(tf), from, to,
+                intParam(params, "bars", DEFAULT_BARS, 1, MAX_BARS),
+                intParam(params, "w", DEFAULT_WIDTH, 1, MAX_SIZE),
+                intParam(params, "h", DEFAULT_HEIGHT, 1, MAX_SIZE),
+                theme);
+    }
+
+    private static ENUM_TIMEFRAME parseTimeframe(String value) {
+        for (ENUM_TIMEFRAME timeframe : ENUM_TIMEFRAME.values()) {
+            if (timeframe.name().equalsIgnoreCase(value) || timeframe.getDescription().equalsIgnoreCase(value)) {
+                return timeframe;
+            }
+        }
+        throw new IllegalArgumentException("Unknown timeframe: " + value);
+    }
+
+    private static int intParam(Map<String, String> params, String name, int defaultValue, int min, int max) {
+        String value = params.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed < min || parsed > max) {
+                throw new IllegalArgumentException(name + " must be between " + min + " and " + max);
+            }
+            return parsed;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + name + "=" + value);
+        }
+    }
+
+    /**
+     * Reads a time given as {@code 2024-01-01} or {@code 2024-01-01T12:00[:00]}, or
+     * {@code null} if the parameter is absent.
+     */
+    private static LocalDateTime timeParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            return null;
+        }
+        try {
+            return value.indexOf('T') < 0 ? LocalDate.parse(value).atStartOfDay() : LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Not a date or date-time: " + name + "=" + value);
+        }
+    }
+
+    private static String lookupKey(String symbol, ENUM_TIMEFRAME timeframe) {
+        return symbol + "," + timeframe.name();
+    }
+
+    private static void sendText(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = message.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private record ChartRequest(String symbol, ENUM_TIMEFRAME timeframe, LocalDateTime from, LocalDateTime to,
+                                int bars, int width, int height, String theme) {
+    }
+
+    /**
+     * Rendered PNGs by request, least recently used evicted first.
+     */
+    private static final class ImageCache {
+        private final int capacity;
+        private final LinkedHashMap<String, byte[]> images;
+        private long hits;
+        private long misses;
+
+        ImageCache(int capacity) {
+            this.capacity = capacity;
+            this.images = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+                    return size() > ImageCache.this.capacity;
+                }
+            };
+        }
+
+        synchronized byte[] get(String key) {
+            byte[] image = images.get(key);
+            if (image == null) {
+                misses++;
+            } else {
+                hits++;
+            }
+            return image;
+        }
+
+        synchronized void put(String key, byte[] image) {
+            if (capacity > 0) {
+                images.put(key, image);
+            }
+        }
+
+        synchronized void clear() {
+            images.clear();
+        }
+
+        synchronized long hits() {
+            return hits;
+        }
+
+        synchronized long misses() {
+            return misses;
+        }
+    }
+
+    /**
+     * Serves the bundled history: {@code ChartImageServer [port]}.
+     */
+    public static void main(String[] args) throws IOException {
+        System.setProperty("java.awt.headless", "true");
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+        ChartImageServer server = new ChartImageServer(port);
+        server.register(Chart.DEFAULT_DATASET);
+        server.start();
+        System.out.println("Serving charts on http://localhost:" + port + "/chart.png?symbol="
+                + Chart.DEFAULT_DATASET.symbol() + "&tf=" + Chart.DEFAULT_DATASET.timeframe().getDescription());
+    }
+}
@@ -0,0 +1,44 @@
+package concrete.goonie.core.headless;
+
+import concrete.goonie.ChartConfig;
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.data.Dataset;
+
+import java.util.Objects;
+
+/**
+ * Everything {@link HeadlessChartEngine} needs to render one chart image.
+ *
+ * @param dataset   the bars to draw; only the bars loaded so far are rendered
+ * @param timeframe the period of one bar, used for the time axis labels
+ * @param firstBar  index of the leftmost bar in view
+ * @param lastBar   index of the rightmost bar in view; the price scale is fitted to the bars
+ *                  between the two, as on an auto-scaled pane
+ * @param config    colours, fonts and margins; it is copied for every render and never changed
+ * @param width     image width in pixels
+ * @param height    image height in pixels, time axis included
+ */
+public record ChartSpec(Dataset dataset, ENUM_TIMEFRAME timeframe, int firstBar, int lastBar,
+                        ChartConfig config, int width, int height) {
+
+    public ChartSpec {
+        Objects.requireNonNull(dataset, "dataset");
+        Objects.requireNonNull(timeframe, "timeframe");
+        Objects.requireNonNull(config, "config");
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Image size must be positive: " + width + "x" + height);
+        }
+        if (firstBar < 0 || lastBar < firstBar) {
+            throw new IllegalArgumentException("Invalid bar range: " + firstBar + ".." + lastBar);
+        }
+    }
+
+    /**
+     * A spec showing the last {@code bars} bars of {@code dataset} loaded so far.
+     */
+    public static ChartSpec latest(Dataset dataset, int bars, ChartConfig config, int width, int height) {
+        int last = Math.max(0, dataset.getData().size() - 1);
+        return new ChartSpec(dataset, dataset.getKey().timeframe(), Math.max(0, last - bars + 1), last,
+                config, width, height);
+    }
+}
@@ -0,0 +1,150 @@
+package concrete.goonie.core.headless;
+
+import concrete.goonie.ChartConfig;
+import concrete.goonie.core.axis.AxisPosition;
+import concrete.goonie.core.axis.AxisUtils;
+import concrete.goonie.core.axis.TickPlanner;
+import concrete.goonie.core.axis.YAxis;
+import concrete.goonie.core.renderers.CandlestickRenderer;
+import concrete.goonie.core.renderers.RasterCandleRenderer;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Renders charts to images without Swing, for batch jobs and servers running with
+ * {@code java.awt.headless=true}.
+ * <p>
+ * An image shows the candle pane over the time axis, drawn by the same {@link AxisUtils},
+ * {@link YAxis} and candle renderers as the interactive {@link concrete.goonie.core.Chart}, so
+ * a snapshot looks like the window would for the same view. The engine keeps no state between
+ * renders: every call works on its own copy of the config, its own axis and renderer, and only
+ * reads the shared dataset. Every render plans its time grid with a new {@link TickPlanner},
+ * starting from {@link AxisUtils#DEFAULT_GRID_SPACING} instead of following the previous view,
+ * so the same spec always gives the same image. One engine can be used by any number of threads at once.
+ */
+public class HeadlessChartEngine {
+    private static final int TIME_AXIS_TICK_LENGTH = 10;
+
+    /**
+     * Renders {@code spec} into a new image.
+     */
+    public BufferedImage render(ChartSpec spec) {
+        ChartConfig config = spec.config().copy();
+        int width = spec.width();
+        int height = spec.height();
+        int axisHeight = Math.min(config.getMarginBottom(), height / 2);
+        int paneHeight = height - axisHeight;
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2d = image.createGraphics();
+        try {
+            YAxis yAxis = new YAxis(config);
+            AffineTransform transform = fitPriceScale(spec, paneHeight);
+
+            // The price axis strip is sized from the labels; measure them once so the plot
+            // width, and with it the bar spacing, is final before anything is drawn
+            yAxis.layout(transform, width, paneHeight);
+            yAxis.drawAxisLabels(g2d, transform, width, paneHeight);
+            yAxis.layout(transform, width, paneHeight);
+            fitTimeScale(spec, config, transform);
+            TickPlanner tickPlanner = new TickPlanner(config, spec.timeframe(), spec.dataset());
+
+            Graphics2D pane = (Graphics2D) g2d.create(0, 0, width, paneHeight);
+            paintPane(pane, spec, config, yAxis, tickPlanner, transform, width, paneHeight);
+            pane.dispose();
+
+            if (axisHeight > 0) {
+                Graphics2D axis = (Graphics2D) g2d.create(0, paneHeight, width, axisHeight);
+                paintTimeAxis(axis, config, tickPlanner.plan(transform, width), width, axisHeight);
+                axis.dispose();
+            }
+        } finally {
+            g2d.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Renders {@code spec} and writes it to {@code out} as a PNG.
+     */
+    public void writePng(ChartSpec spec, OutputStream out) throws IOException {
+        if (!ImageIO.write(render(spec), "png", out)) {
+            throw new IOException("No PNG writer available");
+        }
+    }
+
+    /**
+     * Renders {@code spec} as PNG bytes.
+     */
+    public byte[] renderPng(ChartSpec spec) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        writePng(spec, out);
+        return out.toByteArray();
+    }
+
+    private void paintPane(Graphics2D g2d, ChartSpec spec, ChartConfig config, YAxis yAxis, TickPlanner tickPlanner,
+                           AffineTransform transform, int width, int height) {
+        if (config.getRenderBackend() == ChartConfig.RenderBackend.RASTER) {
+            new RasterCandleRenderer(config, spec.dataset(), yAxis, tickPlanner).draw(g2d, transform, width, height);
+            return;
+        }
+        g2d.setColor(config.getBackgroundColor());
+        g2d.fillRect(0, 0, width, height);
+        AxisUtils.drawGridLines(g2d, tickPlanner.plan(transform, width), height, config);
+        yAxis.draw(g2d, transform, width, height);
+        new CandlestickRenderer(config, spec.dataset()).draw(g2d, transform, width, height);
+    }
+
+    private void paintTimeAxis(Graphics2D g2d, ChartConfig config, TickPlanner.Ticks ticks, int width, int height) {
+        g2d.setColor(config.getBackgroundColor());
+        g2d.fillRect(0, 0, width, height);
+        g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        AxisUtils.drawXAxisLabels(g2d, ticks, width, config, AxisPosition.BOTTOM, TIME_AXIS_TICK_LENGTH);
+    }
+
+    /**
+     * Builds the pane transform with the price scale fitted to the bars in view, leaving the
+     * top margin free above the highest high and below the lowest low. The time scale is set
+     * by {@link #fitTimeScale} once the price axis width is known.
+     */
+    private AffineTransform fitPriceScale(ChartSpec spec, int height) {
+        double[] minMax = new double[2];
+        if (!spec.dataset().getPyramid().findExtremes(spec.firstBar(), spec.lastBar(), minMax)) {
+            minMax[0] = 0;
+            minMax[1] = 1;
+        }
+        double range = minMax[1] - minMax[0];
+        if (range <= 0) {
+            range = Math.max(1e-9, Math.abs(minMax[1]) * 1e-3);
+            minMax[0] -= range / 2;
+            minMax[1] += range / 2;
+        }
+
+        double padding = Math.min(spec.config().getMarginTop(), height / 4.0);
+        double scaleY = Math.max(1, height - 2 * padding) / range;
+        double translateY = height - padding - scaleY * minMax[1];
+
+        AffineTransform transform = AffineTransform.getScaleInstance(1, -1);
+        transform.translate(0, -height + translateY);
+        transform.scale(1, scaleY);
+        return transform;
+    }
+
+    /**
+     * Spreads bars {@code firstBar..lastBar} over the plot left of the price axis, bar centres
+     * half a bar in from either edge. Bar {@code i} sits at {@code x = i + 1}.
+     */
+    private void fitTimeScale(ChartSpec spec, ChartConfig config, AffineTransform transform) {
+        int plotWidth = Math.max(1, spec.width() - config.getyPad() - config.getMarginRight());
+        double scaleX = (double) plotWidth / (spec.lastBar() - spec.firstBar() + 1);
+        double translateX = scaleX / 2 - scaleX * (spec.firstBar() + 1);
+        transform.setTransform(scaleX, transform.getShearY(), transform.getShearX(), transform.getScaleY(),
+                translateX, transform.getTranslateY());
+    }
+}
@@ -0,0 +1,115 @@
+package concrete.goonie.core.live;
+
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.data.Resampler;
+import concrete.goonie.datatypes.CandleSeries;
+
+/**
+ * Folds ticks into the forming bar of a {@link CandleSeries}, the way a trading terminal builds
+ * bars: a tick at or after the end of the last bar's period opens a new bar at the bid, any
+ * other tick moves the last bar's high, low and close. Every tick counts one towards the tick
+ * volume and adds its volume; the spread is that of the latest tick, in points.
+ * <p>
+ * Ticks older than the last bar are folded into the last bar rather than reordering history.
+ * The builder must be the series' only writer, and is used from one thread.
+ */
+public class LiveBarBuilder implements TickRingBuffer.TickConsumer {
+    private final CandleSeries series;
+    private final ENUM_TIMEFRAME timeframe;
+    private final double pointsPerPrice;
+
+    private long periodEnd = Long.MIN_VALUE;
+    private double open, high, low, close;
+    private long tickVolume, volume;
+    private int firstChanged = Integer.MAX_VALUE;
+    private int lastChanged = -1;
+    private long ticks;
+
+    /**
+     * @param point the price step the spread is counted in, e.g. {@code 0.001}
+     */
+    public LiveBarBuilder(CandleSeries series, ENUM_TIMEFRAME timeframe, double point) {
+        if (!(point > 0)) {
+            throw new IllegalArgumentException("Point must be positive: " + point);
+        }
+        if (timeframe.getDuration().isZero()) {
+            throw new IllegalArgumentException("Timeframe has no fixed period: " + timeframe);
+        }
+        this.series = series;
+        this.timeframe = timeframe;
+        this.pointsPerPrice = 1 / point;
+
+        // Continue the series' last bar if it is still open when the first tick arrives
+        int last = series.size() - 1;
+        if (last >= 0) {
+            periodEnd = Resampler.periodEnd(Resampler.periodStart(series.getTime(last), timeframe), timeframe);
+            open = series.getOpen(last);
+            high = series.getHigh(last);
+            low = series.getLow(last);
+            close = series.getClose(last);
+            tickVolume = series.getTickVolume(last);
+            volume = series.getVolume(last);
+        }
+    }
+
+    @Override
+    public void onTick(long time, double bid, double ask, long volume) {
+        ticks++;
+        int spread = (int) Math.round((ask - bid) * pointsPerPrice);
+        if (time >= periodEnd || series.isEmpty()) {
+            long start = Resampler.periodStart(time, timeframe);
+            periodEnd = Resampler.periodEnd(start, timeframe);
+            open = high = low = close = bid;
+            tickVolume = 1;
+            this.volume = volume;
+            series.add(start, bid, bid, bid, bid, 1, saturate(volume), spread);
+        } else {
+            high = Math.max(high, bid);
+            low = Math.min(low, bid);
+            close = bid;
+            tickVolume++;
+            this.volume += volume;
+            series.updateLast(open, high, low, close, saturate(tickVolume), saturate(this.volume), spread);
+        }
+        int index = series.size() - 1;
+        firstChanged = Math.min(firstChanged, index);
+        lastChanged = index;
+    }
+
+    /**
+     * Whether bars changed since the last {@link #resetChanged()}.
+     */
+    public boolean hasChanged() {
+        return lastChanged >= 0;
+    }
+
+    /**
+     * First bar changed or added since the last {@link #resetChanged()}.
+     */
+    public int getFirstChanged() {
+        return firstChanged;
+    }
+
+    /**
+     * Last bar changed or added since the last {@link #resetChanged()}.
+     */
+    public int getLastChanged() {
+        return lastChanged;
+    }
+
+    public void resetChanged() {
+        firstChanged = Integer.MAX_VALUE;
+        lastChanged = -1;
+    }
+
+    /**
+     * Ticks folded so far.
+     */
+    public long getTickCount() {
+        return ticks;
+    }
+
+    private static int saturate(long value) {
+        return (int) Math.min(Integer.MAX_VALUE, value);
+    }
+}
@@ -0,0 +1,180 @@
+package concrete.goonie.core.live;
+
+import concrete.goonie.ChartThemes;
+import concrete.goonie.core.Chart;
+import concrete.goonie.core.ENUM_TIMEFRAME;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.DatasetKey;
+import concrete.goonie.core.data.DatasetRegistry;
+import concrete.goonie.core.data.Mt5CsvParser;
+import concrete.goonie.datatypes.CandleData;
+import concrete.goonie.datatypes.CandleSeries;
+
+import javax.swing.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in for a broker connection: replays recorded bars as ticks into a
+ * {@link TickRingBuffer}, on its own producer thread.
+ * <p>
+ * Every bar becomes {@code ticksPerBar} ticks spread evenly over its period. The bid walks
+ * from the open to the nearer extreme, on to the other one and ends at the close, so bars
+ * rebuilt from the ticks have the recorded open, high, low and close; the ask sits the bar's
+ * spread above it. Ticks are produced at {@code ticksPerSecond}, or as fast as the consumer
+ * takes them if that is zero. A full buffer makes the producer wait, it never drops ticks.
+ */
+public class ReplayFeed {
+    public static final int DEFAULT_TICKS_PER_BAR = 20;
+    private static final int PACING_STEP = 256;
+
+    private final CandleData bars;
+    private final int fromBar;
+    private final ENUM_TIMEFRAME timeframe;
+    private final double point;
+    private final int ticksPerBar;
+    private final double ticksPerSecond;
+    private final TickRingBuffer ring;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile long produced;
+
+    /**
+     * Replays {@code bars} from bar {@code fromBar} on.
+     *
+     * @param point the price step the recorded spreads are counted in
+     */
+    public ReplayFeed(CandleData bars, int fromBar, ENUM_TIMEFRAME timeframe, double point,
+                      int ticksPerBar, double ticksPerSecond, TickRingBuffer ring) {
+        if (ticksPerBar < 4) {
+            throw new IllegalArgumentException("Need at least 4 ticks per bar: " + ticksPerBar);
+        }
+        if (ticksPerSecond < 0) {
+            throw new IllegalArgumentException("Negative tick rate: " + ticksPerSecond);
+        }
+        this.bars = bars;
+        this.fromBar = fromBar;
+        this.timeframe = timeframe;
+        this.point = point;
+        this.ticksPerBar = ticksPerBar;
+        this.ticksPerSecond = ticksPerSecond;
+        this.ring = ring;
+        this.thread = new Thread(this::run, "replay-feed");
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    public void stop() throws InterruptedException {
+        running = false;
+        thread.join();
+    }
+
+    /**
+     * Waits until every bar has been replayed or the feed was stopped.
+     */
+    public void join() throws InterruptedException {
+        thread.join();
+    }
+
+    public long getProducedCount() {
+        return produced;
+    }
+
+    private void run() {
+        long step = timeframe.getDuration().getSeconds() / ticksPerBar;
+        long startNanos = System.nanoTime();
+        long count = 0;
+        for (int bar = fromBar; bar < bars.size() && running; bar++) {
+            double open = bars.getOpen(bar);
+            double close = bars.getClose(bar);
+            double first = close >= open ? bars.getLow(bar) : bars.getHigh(bar);
+            double second = close >= open ? bars.getHigh(bar) : bars.getLow(bar);
+            double spread = bars.getSpread(bar) * point;
+            long time = bars.getTime(bar);
+
+            for (int k = 0; k < ticksPerBar; k++) {
+                double bid = pathPrice(open, first, second, close, k, ticksPerBar);
+                while (!ring.offer(time + k * step, bid, bid + spread, 1)) {
+                    if (!running) {
+                        return;
+                    }
+                    Thread.onSpinWait();
+                }
+                count++;
+                if (ticksPerSecond > 0 && count % PACING_STEP == 0) {
+                    produced = count;
+                    long due = startNanos + (long) (count * 1e9 / ticksPerSecond);
+                    long wait = due - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+            }
+        }
+        produced = count;
+    }
+
+    /**
+     * Bid of tick {@code k} of {@code ticks} on the way from open to the first extreme, the
+     * second extreme and the close. The legs take a third of the ticks each and the turning
+     * points fall on whole ticks, so the extremes are hit exactly.
+     */
+    private static double pathPrice(double open, double first, double second, double close, int k, int ticks) {
+        int last = ticks - 1;
+        int firstTurn = last / 3;
+        int secondTurn = 2 * last / 3;
+        if (k <= firstTurn) {
+            return k == firstTurn ? first : open + (first - open) * k / firstTurn;
+        } else if (k <= secondTurn) {
+            return k == secondTurn ? second : first + (second - first) * (k - firstTurn) / (secondTurn - firstTurn);
+        }
+        return k == last ? close : second + (close - second) * (k - secondTurn) / (last - secondTurn);
+    }
+
+    /**
+     * Shows the bundled history on a chart and replays its last bars live:
+     * {@code ReplayFeed [ticksPerSecond] [replayedBars]}.
+     */
+    public static void main(String[] args) throws IOException {
+        double rate = args.length > 0 ? Double.parseDouble(args[0]) : 200;
+        int replayed = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        DatasetKey source = Chart.DEFAULT_DATASET;
+        CandleSeries recorded;
+        try (InputStream in = ReplayFeed.class.getClassLoader().getResourceAsStream(source.source())) {
+            if (in == null) {
+                throw new IOException("File not found: " + source.source());
+            }
+            recorded = new Mt5CsvParser().parse(in);
+        }
+        int fromBar = Math.max(0, recorded.size() - replayed);
+
+        // The chart starts with the history before the replayed bars
+        CandleSeries live = new CandleSeries(recorded.size());
+        for (int i = 0; i < fromBar; i++) {
+            live.add(recorded.getTime(i), recorded.getOpen(i), recorded.getHigh(i), recorded.getLow(i),
+                    recorded.getClose(i), recorded.getTickVolume(i), recorded.getVolume(i), recorded.getSpread(i));
+        }
+        DatasetKey key = new DatasetKey("replay:" + source.source(), source.symbol(), source.timeframe());
+        Dataset dataset = Dataset.of(key, live);
+        DatasetRegistry.getInstance().register(dataset);
+
+        double point = 0.001;
+        TickRingBuffer ring = new TickRingBuffer(1 << 16);
+        new TickIngestor(ring, dataset, point).start();
+        new ReplayFeed(recorded, fromBar, source.timeframe(), point, DEFAULT_TICKS_PER_BAR, rate, ring).start();
+
+        SwingUtilities.invokeLater(() -> {
+            JFrame frame = new JFrame("Replay " + source.symbol() + "," + source.timeframe());
+            frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+            frame.setSize(1000, 700);
+            frame.setContentPane(new Chart(ChartThemes.darkTheme(), key));
+            frame.setVisible(true);
+        });
+    }
+}
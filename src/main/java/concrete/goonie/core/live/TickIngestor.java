@@ -0,0 +1,154 @@
+package concrete.goonie.core.live;
+
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.datatypes.CandleSeries;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Consumer side of a live feed: takes ticks off a {@link TickRingBuffer} on its own thread,
+ * folds them into the bars of a dataset with a {@link LiveBarBuilder} and tells the dataset's
+ * listeners which bars changed through {@link Dataset#publishBars(int, int)}.
+ * <p>
+ * Ticks are drained in batches. Changes are published when the buffer runs dry, and while
+ * ticks keep coming at most once per publish interval, so listeners such as resampled datasets
+ * are not run per tick however fast the feed is; a chart merges what it is told further, into
+ * one repaint per frame. Nothing is allocated per tick.
+ * <p>
+ * A listener that throws does not stop the feed: the exception goes to the
+ * {@linkplain #setErrorHandler error handler}, which prints it to {@code System.err} unless
+ * replaced, and ticks keep being folded.
+ */
+public class TickIngestor {
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    public static final long DEFAULT_PUBLISH_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final TickRingBuffer ring;
+    private final Dataset dataset;
+    private final LiveBarBuilder builder;
+    private final int batchSize;
+    private final long publishIntervalNanos;
+    private final Thread thread;
+    private volatile boolean running;
+    private volatile long publishes;
+    private volatile Consumer<? super RuntimeException> errorHandler = TickIngestor::printError;
+
+    /**
+     * @param point the price step spreads are counted in
+     * @throws IllegalArgumentException if the dataset's bars are not a {@link CandleSeries}
+     *                                  this ingestor can write to
+     */
+    public TickIngestor(TickRingBuffer ring, Dataset dataset, double point) {
+        this(ring, dataset, point, DEFAULT_BATCH_SIZE, DEFAULT_PUBLISH_INTERVAL_NANOS);
+    }
+
+    public TickIngestor(TickRingBuffer ring, Dataset dataset, double point, int batchSize, long publishIntervalNanos) {
+        if (!(dataset.getData() instanceof CandleSeries)) {
+            throw new IllegalArgumentException("Live bars need a writable CandleSeries: " + dataset);
+        }
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.ring = ring;
+        this.dataset = dataset;
+        this.builder = new LiveBarBuilder((CandleSeries) dataset.getData(), dataset.getKey().timeframe(), point);
+        this.batchSize = batchSize;
+        this.publishIntervalNanos = publishIntervalNanos;
+        this.thread = new Thread(this::run, "tick-ingestor " + dataset.getKey().symbol());
+        thread.setDaemon(true);
+    }
+
+    public void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Stops the ingestor after it has folded and published the ticks already in the buffer.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(thread);
+        thread.join();
+    }
+
+    /**
+     * Sets what is done with exceptions thrown by the dataset's listeners while changes are
+     * published. It runs on the ingestor thread and should return quickly.
+     */
+    public void setErrorHandler(Consumer<? super RuntimeException> errorHandler) {
+        if (errorHandler == null) {
+            throw new IllegalArgumentException("Error handler must not be null");
+        }
+        this.errorHandler = errorHandler;
+    }
+
+    /**
+     * Ticks folded into bars so far.
+     */
+    public long getTickCount() {
+        return builder.getTickCount();
+    }
+
+    /**
+     * Number of times listeners were told about changed bars.
+     */
+    public long getPublishCount() {
+        return publishes;
+    }
+
+    private void run() {
+        long lastPublish = System.nanoTime();
+        while (running) {
+            int drained = ring.drain(builder, batchSize);
+            if (drained == 0) {
+                if (builder.hasChanged()) {
+                    publish();
+                    lastPublish = System.nanoTime();
+                }
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            long now = System.nanoTime();
+            if (now - lastPublish >= publishIntervalNanos) {
+                publish();
+                lastPublish = now;
+            }
+        }
+        while (ring.drain(builder, batchSize) > 0) {
+            // Fold what the feed produced before stop()
+        }
+        if (builder.hasChanged()) {
+            publish();
+        }
+    }
+
+    private void publish() {
+        int first = builder.getFirstChanged();
+        int last = builder.getLastChanged();
+        builder.resetChanged();
+        publishes++;
+        try {
+            dataset.publishBars(first, last);
+        } catch (RuntimeException e) {
+            handleError(e);
+        }
+    }
+
+    // A failing listener, or a failing handler, must not stop the feed
+    private void handleError(RuntimeException e) {
+        try {
+            errorHandler.accept(e);
+        } catch (RuntimeException handlerFailure) {
+            printError(e);
+            printError(handlerFailure);
+        }
+    }
+
+    private static void printError(RuntimeException e) {
+        System.err.println("Cannot publish live bars: " + e);
+    }
+}
@@ -0,0 +1,153 @@
+package concrete.goonie.core.live;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded queue of ticks between exactly one producer thread (the feed) and exactly one
+ * consumer thread (the {@link TickIngestor}).
+ * <p>
+ * Ticks are stored in preallocated primitive columns, so neither side allocates. The producer
+ * only writes the tail index and the consumer only the head index; each side publishes its
+ * index with release semantics after touching the slots and reads the other's with acquire
+ * semantics, which is all the ordering a single producer and a single consumer need. Each side
+ * also keeps its own cached copy of the other's index and only reads the shared one again when
+ * the cache says the buffer is full (producer) or empty (consumer), so in the steady state the
+ * two threads do not touch each other's cache lines per tick.
+ * <p>
+ * The indices live in the chain of superclasses below, with padding classes between them. The
+ * JVM lays out a superclass's fields before its subclass's, so the padding stays between the
+ * consumer's and the producer's fields whatever order it gives fields within one class.
+ */
+public final class TickRingBuffer extends TickRingBufferPad2 {
+    private static final VarHandle HEAD;
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            HEAD = lookup.findVarHandle(TickRingBufferHead.class, "head", long.class);
+            TAIL = lookup.findVarHandle(TickRingBufferTail.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * Receives ticks taken off the buffer by {@link #drain}.
+     */
+    @FunctionalInterface
+    public interface TickConsumer {
+        void onTick(long time, double bid, double ask, long volume);
+    }
+
+    private final int mask;
+    private final long[] time;
+    private final double[] bid;
+    private final double[] ask;
+    private final long[] volume;
+
+    /**
+     * Creates a buffer holding {@code capacity} ticks, rounded up to a power of two.
+     */
+    public TickRingBuffer(int capacity) {
+        if (capacity < 2 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity must be between 2 and 2^30: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity - 1) << 1;
+        mask = size - 1;
+        time = new long[size];
+        bid = new double[size];
+        ask = new double[size];
+        volume = new long[size];
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Adds a tick. Producer thread only.
+     *
+     * @return {@code false} if the buffer is full and the tick was not added
+     */
+    public boolean offer(long time, double bid, double ask, long volume) {
+        long t = tail;
+        if (t - cachedHead > mask) {
+            cachedHead = (long) HEAD.getAcquire(this);
+            if (t - cachedHead > mask) {
+                return false;
+            }
+        }
+        int slot = (int) t & mask;
+        this.time[slot] = time;
+        this.bid[slot] = bid;
+        this.ask[slot] = ask;
+        this.volume[slot] = volume;
+        TAIL.setRelease(this, t + 1);
+        return true;
+    }
+
+    /**
+     * Hands up to {@code limit} ticks to {@code consumer}, oldest first, and frees their slots
+     * in one step afterwards. Consumer thread only.
+     *
+     * @return the number of ticks handed over
+     */
+    public int drain(TickConsumer consumer, int limit) {
+        long h = head;
+        long available = cachedTail - h;
+        if (available <= 0) {
+            cachedTail = (long) TAIL.getAcquire(this);
+            available = cachedTail - h;
+            if (available <= 0) {
+                return 0;
+            }
+        }
+        int count = (int) Math.min(available, limit);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (h + i) & mask;
+            consumer.onTick(time[slot], bid[slot], ask[slot], volume[slot]);
+        }
+        HEAD.setRelease(this, h + count);
+        return count;
+    }
+
+    /**
+     * Number of ticks waiting; only a snapshot when the other side is running.
+     */
+    public int size() {
+        long h = (long) HEAD.getAcquire(this);
+        long t = (long) TAIL.getAcquire(this);
+        return (int) Math.max(0, Math.min(t - h, mask + 1));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+}
+
+// Keeps the consumer's fields off the cache line of the object header and whatever precedes it
+abstract class TickRingBufferPad0 {
+    long p01, p02, p03, p04, p05, p06, p07;
+}
+
+abstract class TickRingBufferHead extends TickRingBufferPad0 {
+    long head; // Next slot to read; written by the consumer only
+    long cachedTail; // Consumer's copy of tail
+}
+
+// Keeps the indices written by the two threads on separate cache lines
+abstract class TickRingBufferPad1 extends TickRingBufferHead {
+    long p11, p12, p13, p14, p15, p16, p17;
+}
+
+abstract class TickRingBufferTail extends TickRingBufferPad1 {
+    long tail; // Next slot to write; written by the producer only
+    long cachedHead; // Producer's copy of head
+}
+
+// Keeps the producer's fields off the cache line of the buffer's own fields
+abstract class TickRingBufferPad2 extends TickRingBufferTail {
+    long p21, p22, p23, p24, p25, p26, p27;
+}
@@ -3,144 +3,287 @@ package concrete.goonie.core.renderers;
 
 import concrete.goonie.ChartConfig;
 import concrete.goonie.core.Renderer;
-import concrete.goonie.datatypes.Candlestick;
+import concrete.goonie.core.data.CandleFile;
+import concrete.goonie.core.data.ChunkCache;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.DatasetKey;
+import concrete.goonie.core.data.OhlcPyramid;
+import concrete.goonie.core.data.PagedCandleSeries;
+import concrete.goonie.datatypes.CandleData;
+import concrete.goonie.datatypes.CandleSnapshot;
 
 import java.awt.*;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.Point2D;
-import java.awt.geom.Rectangle2D;
-import java.io.BufferedReader;
+import java.awt.geom.Path2D;
+import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.time.LocalDate;
-import java.time.LocalDateTime;
-import java.time.LocalTime;
-import java.time.format.DateTimeFormatter;
-import java.util.ArrayList;
-import java.util.List;
-
-public class CandlestickRenderer implements Renderer {
-    private List<Candlestick> candles; // Store the candlestick data
+import java.nio.file.Path;
+
+public class CandlestickRenderer implements Renderer, Closeable {
+    private final Dataset dataset; // Columnar candlestick data, possibly still loading
+    private final PagedCandleSeries candleFile; // Opened by the renderer, which closes it; or null
     private ChartConfig config;
 
-    public CandlestickRenderer(ChartConfig config) {
-        this.config = config;
+    private final Batch batch = new Batch(); // For draws on the EDT
+
+    /**
+     * What one draw works with besides the dataset: the config values it reads, copied by
+     * {@link #update(ChartConfig)}, and the paths it collects the candles in, reused from draw
+     * to draw so all bodies and wicks of one colour go to Java2D as a single shape.
+     * <p>
+     * A frame painted off the EDT brings its own batch, updated and {@linkplain #snapshot
+     * snapshotted} on the EDT before the frame is handed over, so it shares no paths with draws
+     * on the EDT and sees neither config changes nor bars published while it paints.
+     */
+    public static final class Batch {
+        private final Path2D.Float bullishBodies = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+        private final Path2D.Float bearishBodies = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+        private final Path2D.Float bullishWicks = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+        private final Path2D.Float bearishWicks = new Path2D.Float(Path2D.WIND_NON_ZERO, 1024);
+        private int axisWidth;
+        private int marginRight;
+        private Color bullishColor;
+        private Color bearishColor;
+        private CandleData bars; // Bars and pyramid level of a snapshot, or null to read the dataset
+        private OhlcPyramid.Level aggregated;
+
+        /**
+         * Copies the values a draw reads from {@code config}, and drops any snapshot.
+         */
+        public Batch update(ChartConfig config) {
+            axisWidth = config.getyPad();
+            marginRight = config.getMarginRight();
+            bullishColor = config.getBullishColor();
+            bearishColor = config.getBearishColor();
+            bars = null;
+            aggregated = null;
+            return this;
+        }
 
-        this.candles = new ArrayList<>();  // Initialize the list
-        loadCandlestickData(); // Load data into the list
-    }
+        /**
+         * Pins what a draw for {@code transform} reads from {@code dataset}: the bars published so
+         * far and the pyramid level that draw uses, so a frame painted from this batch is not
+         * torn by bars the loader or a live feed publishes meanwhile.
+         */
+        public Batch snapshot(Dataset dataset, AffineTransform transform) {
+            bars = CandleSnapshot.of(dataset.getData());
+            aggregated = null;
+            int level = transform == null ? 0 : aggregationLevel(transform.getScaleX());
+            if (level >= 1) {
+                OhlcPyramid pyramid = dataset.getPyramid();
+                OhlcPyramid.Level current = pyramid.getLevel(Math.min(level, pyramid.levelCount()));
+                if (current != null) {
+                    aggregated = current.snapshot(bars);
+                }
+            }
+            return this;
+        }
+
+        private void reset() {
+            bullishBodies.reset();
+            bearishBodies.reset();
+            bullishWicks.reset();
+            bearishWicks.reset();
+        }
 
-    // Method to load candlestick data (can be dynamically fetched or set)
-    private void loadCandlestickData() {
+        /**
+         * Emits the collected candles: one draw for the wicks and one fill for the bodies of each
+         * colour, so Java2D validates its pipeline four times per frame instead of per bar.
+         */
+        private void paint(Graphics2D g2d) {
+            g2d.setColor(bullishColor);
+            g2d.draw(bullishWicks);
+            g2d.fill(bullishBodies);
+            g2d.setColor(bearishColor);
+            g2d.draw(bearishWicks);
+            g2d.fill(bearishBodies);
+        }
+    }
 
-        DateTimeFormatter dateFormatter = DateTimeFormatter.ofPattern("yyyy.MM.dd");
-        DateTimeFormatter timeFormatter = DateTimeFormatter.ofPattern("HH:mm:ss");
+    public CandlestickRenderer(ChartConfig config, Dataset dataset) {
+        this.config = config;
+        this.dataset = dataset;
+        this.candleFile = null;
+    }
 
-        // Load the file from resources
-        InputStream inputStream = getClass().getClassLoader().getResourceAsStream("Boom.csv");
+    /**
+     * Renders the history stored in a binary {@link CandleFile}, read in chunks through the
+     * shared {@link ChunkCache}, so only the bars in view and around it are on the heap. The
+     * renderer keeps the file open until it is {@linkplain #close() closed}.
+     */
+    public CandlestickRenderer(ChartConfig config, Path candleFile) {
+        this(config, candleFile, ChunkCache.getShared());
+    }
 
-        if (inputStream == null) {
-            throw new IllegalArgumentException("File not found: " + "Boom.csv");
-        }
+    public CandlestickRenderer(ChartConfig config, Path candleFile, ChunkCache cache) {
+        this.config = config;
 
-        try (BufferedReader br = new BufferedReader(new InputStreamReader(inputStream))) {
-            // Skip the header if it exists
-            br.readLine(); // Assuming the first line is the header
-
-            String line;
-            while ((line = br.readLine()) != null) {
-                try {
-                    String[] values = line.split("\t");
-
-                    // Parse date and time
-                    LocalDate date = LocalDate.parse(values[0], dateFormatter);
-                    LocalTime time = (values.length > 8) ? LocalTime.parse(values[1], timeFormatter) : LocalTime.of(0, 0, 0);
-                    LocalDateTime dateTime = LocalDateTime.of(date, time);
-
-                    // Parse other fields
-                    double open = Double.parseDouble(values[values.length > 8 ? 2 : 1]);
-                    double high = Double.parseDouble(values[values.length > 8 ? 3 : 2]);
-                    double low = Double.parseDouble(values[values.length > 8 ? 4 : 3]);
-                    double close = Double.parseDouble(values[values.length > 8 ? 5 : 4]);
-                    int tickVol = Integer.parseInt(values[values.length > 8 ? 6 : 5]);
-                    int volume = Integer.parseInt(values[values.length > 8 ? 7 : 6]);
-                    int spread = Integer.parseInt(values[values.length > 8 ? 8 : 7]);
-
-                    // Create a Candle object and add it to the list
-                    Candlestick candle = new Candlestick(open, high, low, close);
-
-                    candles.add(candle);
-                } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
-                    System.err.println("Error parsing line: " + line);
-                    e.printStackTrace();
-                }
-            }
+        try {
+            PagedCandleSeries series = CandleFile.openPaged(candleFile, cache, PagedCandleSeries.DEFAULT_CHUNK_BARS);
+            DatasetKey key = new DatasetKey(candleFile.toString(), series.getSymbol(), series.getTimeframe());
+            this.candleFile = series;
+            this.dataset = Dataset.of(key, series);
         } catch (IOException e) {
-            e.printStackTrace();
+            throw new IllegalArgumentException("Cannot open candle file: " + candleFile, e);
         }
+    }
 
-        System.err.println("LOADED");
+    public CandleData getSeries() {
+        return dataset.getData();
+    }
 
+    /**
+     * Closes the candle file a renderer created from a {@link Path} opened, and drops its chunks
+     * from the cache. A renderer handed a {@link Dataset} leaves it to its holder.
+     */
+    @Override
+    public void close() throws IOException {
+        if (candleFile != null) {
+            candleFile.close();
+        }
+    }
 
+    public double draw(Graphics2D g2d, AffineTransform transform, int width, int height) {
+        return draw(g2d, transform, width, height, batch.update(config));
     }
 
+    /**
+     * Draws with the config values and paths of {@code batch} instead of the renderer's own,
+     * which is safe on any thread as long as no other draw uses {@code batch} meanwhile.
+     */
+    public double draw(Graphics2D g2d, AffineTransform transform, int width, int height, Batch batch) {
+        if (transform == null) return width;
+        CandleData series = batch.bars != null ? batch.bars : dataset.getData();
 
+        // Panes only scale and translate, so data -> screen is a primitive linear map per axis
+        double scaleX = transform.getScaleX();
+        double translateX = transform.getTranslateX();
+        double scaleY = transform.getScaleY();
+        double translateY = transform.getTranslateY();
+        if (scaleX <= 0) return width;
 
-    public double draw(Graphics2D g2d, AffineTransform transform, int width, int height) {
-        Double minY = null;
-        Double maxY = null;
-        if (transform == null) return width;
-        int n = (int) (transform.getScaleX());
+        int n = (int) scaleX;
         int barWidth = (n % 2 == 0 ? n - 1 : n) - 1;
         if (barWidth < 3) barWidth = 3;
+        int halfBar = barWidth / 2;
+        int right = width - batch.axisWidth - batch.marginRight / 2;
+
+        // Bar i sits at x = i + 1; invert the x mapping to find the bars that can reach the plot,
+        // or just the clipped columns when only a strip is repainted
+        Rectangle clip = g2d.getClipBounds();
+        int left = clip == null ? 0 : Math.max(0, clip.x);
+        int clipRight = clip == null ? right : Math.min(right, clip.x + clip.width);
+        int count = series.size();
+        int first = Math.max(0, (int) Math.floor((left - halfBar - translateX) / scaleX) - 2);
+        int last = Math.min(count - 1, (int) Math.ceil((clipRight + halfBar - translateX) / scaleX));
+        if (first > last) return width;
+
+        // Two or more bars per pixel column: draw the pyramid level that gives one or two per pixel
+        int level = aggregationLevel(scaleX);
+        if (level >= 1) {
+            OhlcPyramid.Level aggregated = batch.aggregated;
+            if (batch.bars == null) {
+                OhlcPyramid pyramid = dataset.getPyramid();
+                aggregated = pyramid.getLevel(Math.min(level, pyramid.levelCount()));
+            }
+            if (aggregated != null) {
+                drawAggregated(g2d, batch, aggregated, first, last, scaleX, translateX, scaleY, translateY, right, height);
+                return width;
+            }
+        }
 
-        for (int i = 0; i < candles.size(); i++) {
+        batch.reset();
+        for (int i = first; i <= last; i++) {
             double xPos = i + 1.0;
-            Candlestick candle = candles.get(i);
-
-            double open = candle.getOpen();
-            double close = candle.getClose();
-            double high = candle.getHigh();
-            double low = candle.getLow();
 
-            Point2D openPoint = transform.transform(new Point2D.Double(xPos, open), null);
-            Point2D closePoint = transform.transform(new Point2D.Double(xPos, close), null);
-            Point2D highPoint = transform.transform(new Point2D.Double(xPos, high), null);
-            Point2D lowPoint = transform.transform(new Point2D.Double(xPos, low), null);
+            double open = series.getOpen(i);
+            double close = series.getClose(i);
+            double high = series.getHigh(i);
+            double low = series.getLow(i);
 
-            int x = (int) openPoint.getX();
-            int yOpen = (int) openPoint.getY();
-            int yClose = (int) closePoint.getY();
-            int yHigh = (int) highPoint.getY();
-            int yLow = (int) lowPoint.getY();
+            int x = (int) Math.floor(xPos * scaleX + translateX);
+            int yOpen = (int) (open * scaleY + translateY);
+            int yClose = (int) (close * scaleY + translateY);
+            int yHigh = (int) (high * scaleY + translateY);
+            int yLow = (int) (low * scaleY + translateY);
 
-            if (x + barWidth / 2 < 0 || x - barWidth / 2 > width - config.getyPad() - config.getMarginRight() / 2 || yHigh > height || yLow < 0) {
+            if (x + halfBar < 0 || x - halfBar > right || yHigh > height || yLow < 0) {
                 continue;
             }
 
-            // First visible candle sets the base range
-            if (minY == null || maxY == null) {
-                minY = low;
-                maxY = high;
-            } else {
-                minY = Math.min(minY, low);
-                maxY = Math.max(maxY, high);
+            boolean bullish = close >= open;
+            addWick(bullish ? batch.bullishWicks : batch.bearishWicks, x, yHigh, yLow, height);
+
+            int top = Math.min(yOpen, yClose);
+            int bottom = Math.max(yOpen, yClose);
+            if (bottom > top) {
+                Path2D.Float bodies = bullish ? batch.bullishBodies : batch.bearishBodies;
+                bodies.moveTo(x - halfBar, top);
+                bodies.lineTo(x - halfBar + barWidth, top);
+                bodies.lineTo(x - halfBar + barWidth, bottom);
+                bodies.lineTo(x - halfBar, bottom);
+                bodies.closePath();
             }
-
-            int barHeight = Math.abs(yOpen - yClose);
-            g2d.setColor(close >= open ? config.getBullishColor() : config.getBearishColor());
-            g2d.drawLine(x, yHigh, x, yLow);
-            g2d.fill(new Rectangle2D.Double(x - (barWidth / 2), Math.min(yOpen, yClose), barWidth, barHeight));
         }
+        batch.paint(g2d);
 
-        if (minY != null && maxY != null) {
-//
-      //      mouseHandler.updateVisibleYRange(minY, maxY);
-        }
         return width;
     }
 
+    /**
+     * Stores the lowest low and highest high of bars {@code firstBar..lastBar} in
+     * {@code minMax}, answered from the dataset's pyramid in O(log n) without scanning bars.
+     *
+     * @return {@code false} if none of those bars are loaded
+     */
+    public boolean getValueRange(int firstBar, int lastBar, double[] minMax) {
+        return dataset.getPyramid().findExtremes(firstBar, lastBar, minMax);
+    }
+
+    /**
+     * Draws one high-low line per pyramid entry. Each entry spans {@code 2^k} bars, which the
+     * level choice keeps more than half a pixel and at most one pixel wide, so at most about
+     * {@code 2 * width} lines are drawn however much history is visible.
+     */
+    private static void drawAggregated(Graphics2D g2d, Batch batch, OhlcPyramid.Level level, int firstBar,
+                                       int lastBar, double scaleX, double translateX, double scaleY,
+                                       double translateY, int right, int height) {
+        int shift = level.shift();
+        int firstEntry = firstBar >> shift;
+        int lastEntry = Math.min(level.count() - 1, lastBar >> shift);
+
+        batch.reset();
+        for (int j = firstEntry; j <= lastEntry; j++) {
+            double xPos = (j << shift) + 1.0;
+            int x = (int) Math.floor(xPos * scaleX + translateX);
+            int yHigh = (int) (level.getHigh(j) * scaleY + translateY);
+            int yLow = (int) (level.getLow(j) * scaleY + translateY);
+
+            if (x < 0 || x > right || yHigh > height || yLow < 0) {
+                continue;
+            }
+
+            boolean bullish = level.getClose(j) >= level.getOpen(j);
+            addWick(bullish ? batch.bullishWicks : batch.bearishWicks, x, yHigh, yLow, height);
+        }
+        batch.paint(g2d);
+    }
+
+    // The coarsest pyramid level whose entries are at most a pixel wide, or 0 below two bars per pixel
+    private static int aggregationLevel(double scaleX) {
+        return 31 - Integer.numberOfLeadingZeros((int) Math.min(Integer.MAX_VALUE, 1.0 / scaleX));
+    }
+
+    /**
+     * Adds a vertical wick clamped to the pane's rows. Java2D drops the first pixel of a path
+     * segment that starts on the last row and leaves the clip, which {@code drawLine} does not,
+     * so unclamped wicks would lose a pixel at the bottom edge.
+     */
+    private static void addWick(Path2D.Float wicks, int x, int yHigh, int yLow, int height) {
+        wicks.moveTo(x, Math.max(0, Math.min(yHigh, yLow)));
+        wicks.lineTo(x, Math.min(height - 1, Math.max(yHigh, yLow)));
+    }
+
     // Candlestick data class
 
 
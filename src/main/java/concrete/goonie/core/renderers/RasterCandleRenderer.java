@@ -0,0 +1,247 @@
+package concrete.goonie.core.renderers;
+
+import concrete.goonie.ChartConfig;
+import concrete.goonie.core.Renderer;
+import concrete.goonie.core.axis.AxisPosition;
+import concrete.goonie.core.axis.TickPlanner;
+import concrete.goonie.core.axis.YAxis;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.OhlcPyramid;
+import concrete.goonie.datatypes.CandleData;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+
+/**
+ * Software rasterizer for a candle pane, selected with {@link ChartConfig.RenderBackend#RASTER}.
+ * <p>
+ * The background, the grid and the candles are written straight into the {@code int[]} of a
+ * {@code TYPE_INT_RGB} image with horizontal and vertical span fills, and the image reaches the
+ * pane in a single blit. Only the price labels still go through {@link Graphics2D}. With
+ * antialiasing off the output matches the {@link CandlestickRenderer} path pixel for pixel:
+ * the same positions are computed the same way and painted in the same order.
+ * <p>
+ * When only a strip of the pane is repainted, only the clipped rectangle of the image is
+ * cleared, only the bars that can reach it are rasterized, and only it is blitted.
+ */
+public class RasterCandleRenderer implements Renderer {
+    private final Dataset dataset;
+    private final YAxis yAxis;
+    private TickPlanner tickPlanner;
+    private ChartConfig config;
+
+    private BufferedImage image;
+    private int[] pixels;
+    private int stride;
+    private int width, height;
+    // Pixels outside [clipLeft, clipRight) x [clipTop, clipBottom) are left as they are
+    private int clipLeft, clipRight, clipTop, clipBottom;
+
+    public RasterCandleRenderer(ChartConfig config, Dataset dataset, YAxis yAxis, TickPlanner tickPlanner) {
+        this.config = config;
+        this.dataset = dataset;
+        this.yAxis = yAxis;
+        this.tickPlanner = tickPlanner;
+    }
+
+    /**
+     * Takes the vertical grid lines from {@code tickPlanner}, normally the one shared by the
+     * panes of the chart.
+     */
+    public void setTickPlanner(TickPlanner tickPlanner) {
+        this.tickPlanner = tickPlanner;
+    }
+
+    public double draw(Graphics2D g2d, AffineTransform transform, int width, int height) {
+        if (transform == null || width <= 0 || height <= 0) return width;
+        ensureImage(width, height);
+        Rectangle clip = g2d.getClipBounds();
+        clipLeft = clip == null ? 0 : Math.max(0, clip.x);
+        clipRight = clip == null ? width : Math.min(width, clip.x + clip.width);
+        clipTop = clip == null ? 0 : Math.max(0, clip.y);
+        clipBottom = clip == null ? height : Math.min(height, clip.y + clip.height);
+
+        int background = config.getBackgroundColor().getRGB();
+        int grid = config.getGridColor().getRGB();
+        fillRect(0, 0, width, height, background);
+
+        // Grid and axis strip, exactly where AxisUtils and YAxis would draw them
+        TickPlanner.Ticks ticks = tickPlanner.plan(transform, width);
+        for (int i = 0; i < ticks.size(); i++) {
+            verticalLine(ticks.getX(i), 0, height, grid);
+        }
+        yAxis.layout(transform, width, height);
+        int tickLength = yAxis.getTickLength();
+        for (int i = 0; i < yAxis.getGridLineCount(); i++) {
+            int y = yAxis.getGridLineY(i);
+            horizontalLine(0, yAxis.getGridLineEnd(), y, grid);
+            if (yAxis.getPosition() == AxisPosition.RIGHT) {
+                horizontalLine(width - tickLength, width, y, grid);
+            } else {
+                horizontalLine(width, width + tickLength, y, grid);
+            }
+        }
+        int axisX = yAxis.getAxisX();
+        fillRect(axisX, 0, Math.abs(width - axisX) - tickLength, height, background);
+
+        if (clipLeft < clipRight && clipTop < clipBottom) {
+            drawCandles(transform);
+            g2d.drawImage(image, clipLeft, clipTop, clipRight, clipBottom,
+                    clipLeft, clipTop, clipRight, clipBottom, null);
+        }
+        yAxis.drawAxisLabels(g2d, transform, width, height);
+        return width;
+    }
+
+    private void drawCandles(AffineTransform transform) {
+        CandleData series = dataset.getData();
+        double scaleX = transform.getScaleX();
+        double translateX = transform.getTranslateX();
+        double scaleY = transform.getScaleY();
+        double translateY = transform.getTranslateY();
+        if (scaleX <= 0) return;
+
+        int n = (int) scaleX;
+        int barWidth = (n % 2 == 0 ? n - 1 : n) - 1;
+        if (barWidth < 3) barWidth = 3;
+        int halfBar = barWidth / 2;
+        int right = width - config.getyPad() - config.getMarginRight() / 2;
+
+        // Only the bars that can reach the clipped columns, as in the Java2D path
+        int lastColumn = Math.min(right, clipRight);
+        int count = series.size();
+        int first = Math.max(0, (int) Math.floor((clipLeft - halfBar - translateX) / scaleX) - 2);
+        int last = Math.min(count - 1, (int) Math.ceil((lastColumn + halfBar - translateX) / scaleX));
+        if (first > last) return;
+
+        int bullish = config.getBullishColor().getRGB();
+        int bearish = config.getBearishColor().getRGB();
+
+        int level = 31 - Integer.numberOfLeadingZeros((int) Math.min(Integer.MAX_VALUE, 1.0 / scaleX));
+        if (level >= 1) {
+            OhlcPyramid pyramid = dataset.getPyramid();
+            OhlcPyramid.Level aggregated = pyramid.getLevel(Math.min(level, pyramid.levelCount()));
+            if (aggregated != null) {
+                drawAggregated(aggregated, first, last, scaleX, translateX, scaleY, translateY, right,
+                        bullish, bearish);
+                return;
+            }
+        }
+
+        // Bearish candles go second, as in the Java2D path, so overlaps resolve the same way
+        for (int pass = 0; pass < 2; pass++) {
+            boolean bullishPass = pass == 0;
+            int color = bullishPass ? bullish : bearish;
+            for (int i = first; i <= last; i++) {
+                double open = series.getOpen(i);
+                double close = series.getClose(i);
+                if ((close >= open) != bullishPass) {
+                    continue;
+                }
+
+                int x = (int) Math.floor((i + 1.0) * scaleX + translateX);
+                int yOpen = (int) (open * scaleY + translateY);
+                int yClose = (int) (close * scaleY + translateY);
+                int yHigh = (int) (series.getHigh(i) * scaleY + translateY);
+                int yLow = (int) (series.getLow(i) * scaleY + translateY);
+
+                if (x + halfBar < 0 || x - halfBar > right || yHigh > height || yLow < 0) {
+                    continue;
+                }
+
+                verticalLine(x, Math.min(yHigh, yLow), Math.max(yHigh, yLow), color);
+                int top = Math.min(yOpen, yClose);
+                int bottom = Math.max(yOpen, yClose);
+                if (bottom > top) {
+                    fillRect(x - halfBar, top, barWidth, bottom - top, color);
+                }
+            }
+        }
+    }
+
+    private void drawAggregated(OhlcPyramid.Level level, int firstBar, int lastBar,
+                                double scaleX, double translateX, double scaleY, double translateY,
+                                int right, int bullish, int bearish) {
+        int shift = level.shift();
+        int firstEntry = firstBar >> shift;
+        int lastEntry = Math.min(level.count() - 1, lastBar >> shift);
+
+        for (int pass = 0; pass < 2; pass++) {
+            boolean bullishPass = pass == 0;
+            int color = bullishPass ? bullish : bearish;
+            for (int j = firstEntry; j <= lastEntry; j++) {
+                if ((level.getClose(j) >= level.getOpen(j)) != bullishPass) {
+                    continue;
+                }
+                int x = (int) Math.floor(((j << shift) + 1.0) * scaleX + translateX);
+                int yHigh = (int) (level.getHigh(j) * scaleY + translateY);
+                int yLow = (int) (level.getLow(j) * scaleY + translateY);
+
+                if (x < 0 || x > right || yHigh > height || yLow < 0) {
+                    continue;
+                }
+                verticalLine(x, Math.min(yHigh, yLow), Math.max(yHigh, yLow), color);
+            }
+        }
+    }
+
+    /**
+     * Sets pixels {@code (x, y0..y1)}, both ends included like {@code Graphics.drawLine}, within
+     * the clip.
+     */
+    private void verticalLine(int x, int y0, int y1, int rgb) {
+        if (x < clipLeft || x >= clipRight) return;
+        int from = Math.max(clipTop, y0);
+        int to = Math.min(clipBottom - 1, y1);
+        for (int offset = from * stride + x; from <= to; from++, offset += stride) {
+            pixels[offset] = rgb;
+        }
+    }
+
+    /**
+     * Sets pixels {@code (x0..x1, y)}, both ends included like {@code Graphics.drawLine}, within
+     * the clip.
+     */
+    private void horizontalLine(int x0, int x1, int y, int rgb) {
+        if (y < clipTop || y >= clipBottom) return;
+        int from = Math.max(clipLeft, Math.min(x0, x1));
+        int to = Math.min(clipRight - 1, Math.max(x0, x1));
+        if (from <= to) {
+            Arrays.fill(pixels, y * stride + from, y * stride + to + 1, rgb);
+        }
+    }
+
+    /**
+     * Fills the {@code w} by {@code h} rectangle at {@code (x, y)} like {@code Graphics.fillRect},
+     * within the clip.
+     */
+    private void fillRect(int x, int y, int w, int h, int rgb) {
+        int x0 = Math.max(clipLeft, x);
+        int x1 = Math.min(clipRight, x + w);
+        int y0 = Math.max(clipTop, y);
+        int y1 = Math.min(clipBottom, y + h);
+        if (x0 >= x1) return;
+        for (int row = y0; row < y1; row++) {
+            Arrays.fill(pixels, row * stride + x0, row * stride + x1, rgb);
+        }
+    }
+
+    /**
+     * Reuses the framebuffer while it is large enough, so resizing only reallocates on growth.
+     */
+    private void ensureImage(int width, int height) {
+        this.width = width;
+        this.height = height;
+        if (image != null && image.getWidth() >= width && image.getHeight() >= height) {
+            return;
+        }
+        int capacityWidth = image == null ? width : Math.max(width, image.getWidth());
+        int capacityHeight = image == null ? height : Math.max(height, image.getHeight());
+        image = new BufferedImage(capacityWidth, capacityHeight, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        stride = capacityWidth;
+    }
+}
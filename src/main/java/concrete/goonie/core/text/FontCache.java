@@ -0,0 +1,70 @@
+package concrete.goonie.core.text;
+
+import java.awt.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Process-wide cache of the chart fonts.
+ * <p>
+ * The Inter faces are read from the classpath once, the first time a font is asked for, and
+ * registered with the {@link GraphicsEnvironment} once. Every style and size derived from them
+ * is kept, so looking a font up while painting does no I/O and, after the first lookup of
+ * a size, allocates nothing that outlives the call. If a face cannot be loaded Arial is used
+ * in its place.
+ */
+public final class FontCache {
+    private static final String REGULAR_FACE = "Inter-Regular.ttf";
+    private static final String BOLD_FACE = "Inter_Bold.ttf";
+
+    private static final Map<Integer, Font> DERIVED = new ConcurrentHashMap<>();
+
+    private FontCache() {
+    }
+
+    /**
+     * Returns Inter at {@code size} points: Inter Bold for {@link Font#BOLD}, Inter Regular for
+     * any other style.
+     */
+    public static Font getFont(int style, float size) {
+        int key = (style << 16) | (Math.round(size * 16) & 0xFFFF);
+        Font font = DERIVED.get(key);
+        if (font == null) {
+            font = DERIVED.computeIfAbsent(key, k -> derive(style, size));
+        }
+        return font;
+    }
+
+    private static Font derive(int style, float size) {
+        Font face = style == Font.BOLD ? Faces.BOLD : Faces.REGULAR;
+        if (face == null) {
+            return new Font("Arial", style, (int) size);
+        }
+        return face.deriveFont(size);
+    }
+
+    /**
+     * Loaded on first use, so merely referencing the cache does not read the font files.
+     */
+    private static final class Faces {
+        static final Font REGULAR = load(REGULAR_FACE);
+        static final Font BOLD = load(BOLD_FACE);
+
+        private static Font load(String resource) {
+            try (InputStream in = FontCache.class.getClassLoader().getResourceAsStream(resource)) {
+                if (in == null) {
+                    System.err.println("Font not found on the classpath: " + resource);
+                    return null;
+                }
+                Font font = Font.createFont(Font.TRUETYPE_FONT, in);
+                GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
+                return font;
+            } catch (IOException | FontFormatException e) {
+                System.err.println("Cannot load font " + resource + ": " + e);
+                return null;
+            }
+        }
+    }
+}
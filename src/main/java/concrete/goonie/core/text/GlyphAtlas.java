@@ -0,0 +1,133 @@
+package concrete.goonie.core.text;
+
+import java.awt.*;
+import java.awt.font.FontRenderContext;
+import java.awt.image.BufferedImage;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pre-rendered printable ASCII glyphs of one font and colour, covering everything the axes
+ * print: digits, month names and separators.
+ * <p>
+ * The glyphs are drawn once into a single image strip together with their advances. A label
+ * is then painted as one image copy per character and measured by adding up advances, so the
+ * axes neither go through text layout nor ask {@link FontMetrics} for widths on every frame.
+ * Atlases only stand in for {@link Graphics2D#drawString(String, int, int)} where they give
+ * the same result: untransformed text with integer metrics, antialiased or not.
+ * {@link #forGraphics} returns {@code null} otherwise, and callers draw the string as usual.
+ */
+public final class GlyphAtlas {
+    private static final char FIRST = ' ';
+    private static final char LAST = '~';
+    private static final Map<Key, GlyphAtlas> ATLASES = new ConcurrentHashMap<>();
+
+    private record Key(Font font, int rgb, boolean antialiased) {
+    }
+
+    private final Font font;
+    private final Color color;
+    private final BufferedImage image;
+    private final int[] advances = new int[LAST - FIRST + 1];
+    private final int[] cellX = new int[LAST - FIRST + 1];
+    private final int padding;
+    private final int ascent;
+    private final int cellHeight;
+    private final Map<String, Integer> widths = new ConcurrentHashMap<>(); // Strings with other characters
+
+    private GlyphAtlas(Font font, Color color, boolean antialiased) {
+        this.font = font;
+        this.color = color;
+        Object textHint = antialiased ? RenderingHints.VALUE_TEXT_ANTIALIAS_ON : RenderingHints.VALUE_TEXT_ANTIALIAS_OFF;
+        BufferedImage scratch = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = scratch.createGraphics();
+        measure.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, textHint);
+        FontMetrics metrics = measure.getFontMetrics(font);
+        measure.dispose();
+
+        // Room around every cell for glyphs that reach past their advance or the ascent
+        padding = Math.max(2, font.getSize() / 2);
+        ascent = metrics.getAscent();
+        cellHeight = ascent + metrics.getDescent() + 2 * padding;
+        int x = 0;
+        for (char c = FIRST; c <= LAST; c++) {
+            advances[c - FIRST] = metrics.charWidth(c);
+            cellX[c - FIRST] = x;
+            x += advances[c - FIRST] + 2 * padding;
+        }
+
+        image = new BufferedImage(Math.max(1, x), cellHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2d = image.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, textHint);
+        g2d.setFont(font);
+        g2d.setColor(color);
+        for (char c = FIRST; c <= LAST; c++) {
+            g2d.drawString(String.valueOf(c), cellX[c - FIRST] + padding, padding + ascent);
+        }
+        g2d.dispose();
+    }
+
+    /**
+     * Returns the atlas that reproduces {@code font} in {@code color} on {@code g2d}, or
+     * {@code null} if text on that context has to go through Java2D: it is transformed,
+     * uses fractional metrics or LCD antialiasing.
+     */
+    public static GlyphAtlas forGraphics(Graphics2D g2d, Font font, Color color) {
+        FontRenderContext frc = g2d.getFontRenderContext();
+        Object aa = frc.getAntiAliasingHint();
+        if (frc.isTransformed() || frc.usesFractionalMetrics() || font.isTransformed()
+                || (aa != RenderingHints.VALUE_TEXT_ANTIALIAS_ON && aa != RenderingHints.VALUE_TEXT_ANTIALIAS_OFF)) {
+            return null;
+        }
+        Key key = new Key(font, color.getRGB(), aa == RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        GlyphAtlas atlas = ATLASES.get(key);
+        if (atlas == null) {
+            atlas = ATLASES.computeIfAbsent(key, k -> new GlyphAtlas(k.font(), color, k.antialiased()));
+        }
+        return atlas;
+    }
+
+    /**
+     * Width of {@code text} in pixels, as {@link FontMetrics#stringWidth(String)} reports it.
+     */
+    public int stringWidth(String text, FontMetrics metrics) {
+        int width = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < FIRST || c > LAST) {
+                return widths.computeIfAbsent(text, metrics::stringWidth);
+            }
+            width += advances[c - FIRST];
+        }
+        return width;
+    }
+
+    /**
+     * Draws {@code text} with its baseline starting at {@code (x, y)}, like
+     * {@link Graphics2D#drawString(String, int, int)} with the atlas's font and colour.
+     */
+    public void drawString(Graphics2D g2d, String text, int x, int y) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < FIRST || c > LAST) {
+                g2d.setFont(font);
+                g2d.setColor(color);
+                g2d.drawString(text, x, y);
+                return;
+            }
+        }
+        int top = y - ascent - padding;
+        for (int i = 0; i < text.length(); i++) {
+            int index = text.charAt(i) - FIRST;
+            int advance = advances[index];
+            if (text.charAt(i) != ' ') {
+                int sx = cellX[index];
+                int cellWidth = advance + 2 * padding;
+                int dx = x - padding;
+                g2d.drawImage(image, dx, top, dx + cellWidth, top + cellHeight,
+                        sx, 0, sx + cellWidth, cellHeight, null);
+            }
+            x += advance;
+        }
+    }
+}
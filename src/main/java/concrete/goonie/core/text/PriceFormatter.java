@@ -0,0 +1,97 @@
+package concrete.goonie.core.text;
+
+import java.math.RoundingMode;
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+/**
+ * Formats prices with a fixed number of decimals and a {@code '.'} separator, the way
+ * {@code new DecimalFormat("#0.0000")} does in a locale with a dot, but into a reusable
+ * {@code char[]} instead of through a {@link StringBuffer} and {@link String}s.
+ * <p>
+ * The digits come from rounding the scaled value to a {@code long}. Values whose scaled form
+ * sits too close to a rounding tie, or is too large for a {@code long}, are handed to
+ * {@link DecimalFormat} so the text always matches it. Instances are not thread-safe.
+ * {@code PriceFormatterBenchmark}, in the test sources, compares the two.
+ */
+public final class PriceFormatter {
+    private static final double[] POWERS_OF_TEN = {
+            1, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15
+    };
+    private static final double MAX_SCALED = 1e15;
+    private static final double TIE_MARGIN = 1e-6;
+
+    private final int decimals;
+    private final double scale;
+    private final char[] buffer = new char[40];
+    private DecimalFormat fallback;
+
+    public PriceFormatter(int decimals) {
+        if (decimals < 0 || decimals >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported number of decimals: " + decimals);
+        }
+        this.decimals = decimals;
+        this.scale = POWERS_OF_TEN[decimals];
+    }
+
+    public int getDecimals() {
+        return decimals;
+    }
+
+    /**
+     * Writes {@code value} into {@code out} starting at index 0 and returns the number of
+     * characters written. {@code out} must hold at least 40 characters.
+     */
+    public int format(double value, char[] out) {
+        double scaled = Math.abs(value) * scale;
+        double fraction = scaled - Math.floor(scaled);
+        if (!(scaled < MAX_SCALED) || Math.abs(fraction - 0.5) < TIE_MARGIN) {
+            String text = fallbackFormat(value);
+            text.getChars(0, text.length(), out, 0);
+            return text.length();
+        }
+
+        long digits = Math.round(scaled);
+        int length = 0;
+        if (Double.doubleToRawLongBits(value) < 0) {
+            out[length++] = '-'; // DecimalFormat keeps the sign of values that round to zero
+        }
+
+        // Write the digits backwards into the scratch buffer, then copy them forwards
+        int position = buffer.length;
+        for (int i = 0; i < decimals; i++) {
+            buffer[--position] = (char) ('0' + digits % 10);
+            digits /= 10;
+        }
+        buffer[--position] = '.';
+        do {
+            buffer[--position] = (char) ('0' + digits % 10);
+            digits /= 10;
+        } while (digits != 0);
+
+        int count = buffer.length - position;
+        System.arraycopy(buffer, position, out, length, count);
+        return length + count;
+    }
+
+    /**
+     * Formats {@code value} into a new string.
+     */
+    public String format(double value) {
+        char[] out = new char[buffer.length];
+        return new String(out, 0, format(value, out));
+    }
+
+    private String fallbackFormat(double value) {
+        if (fallback == null) {
+            StringBuilder pattern = new StringBuilder("#0.");
+            for (int i = 0; i < decimals; i++) {
+                pattern.append('0');
+            }
+            fallback = new DecimalFormat(pattern.toString(), DecimalFormatSymbols.getInstance(Locale.ROOT));
+            fallback.setRoundingMode(RoundingMode.HALF_EVEN);
+        }
+        return fallback.format(value);
+    }
+}
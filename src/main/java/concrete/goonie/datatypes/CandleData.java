@@ -0,0 +1,32 @@
+package concrete.goonie.datatypes;
+
+/**
+ * Read-only, index addressed view of a candle history. Bar {@code 0} is the oldest bar and
+ * times are epoch seconds. Implementations may keep the columns on the heap
+ * ({@link CandleSeries}) or anywhere else, so render loops should only rely on these
+ * accessors.
+ */
+public interface CandleData {
+
+    int size();
+
+    long getTime(int index);
+
+    double getOpen(int index);
+
+    double getHigh(int index);
+
+    double getLow(int index);
+
+    double getClose(int index);
+
+    int getTickVolume(int index);
+
+    int getVolume(int index);
+
+    int getSpread(int index);
+
+    default boolean isEmpty() {
+        return size() == 0;
+    }
+}
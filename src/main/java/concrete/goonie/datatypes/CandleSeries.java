@@ -0,0 +1,200 @@
+package concrete.goonie.datatypes;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Columnar store for candle history.
+ * <p>
+ * Every field of a bar lives in its own primitive array, so a series of {@code n} bars costs
+ * eight arrays instead of {@code n} {@link Candlestick} objects, and a render loop walking
+ * consecutive bars reads memory sequentially. Bars are addressed by index; times are
+ * epoch seconds of the (UTC-interpreted) server time the history was exported in.
+ * <p>
+ * The series has a single writer. Readers on other threads may call the accessors
+ * concurrently: {@link #size()} is published with release semantics only after the arrays
+ * holding the new bars have been written, so any index below a size a reader has observed
+ * is safe to read, and appends stay free of memory fences.
+ */
+public class CandleSeries implements CandleData {
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final VarHandle SIZE;
+
+    static {
+        try {
+            SIZE = MethodHandles.lookup().findVarHandle(CandleSeries.class, "size", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private long[] time;
+    private double[] open;
+    private double[] high;
+    private double[] low;
+    private double[] close;
+    private int[] tickVolume;
+    private int[] volume;
+    private int[] spread;
+    private int size; // published with release/acquire semantics through SIZE
+
+    public CandleSeries() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CandleSeries(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        time = new long[capacity];
+        open = new double[capacity];
+        high = new double[capacity];
+        low = new double[capacity];
+        close = new double[capacity];
+        tickVolume = new int[capacity];
+        volume = new int[capacity];
+        spread = new int[capacity];
+    }
+
+    /**
+     * Appends a bar to the end of the series, growing the columns if needed.
+     */
+    public void add(long time, double open, double high, double low, double close,
+                    int tickVolume, int volume, int spread) {
+        int index = (int) SIZE.getOpaque(this);
+        ensureCapacity(index + 1);
+        this.time[index] = time;
+        this.open[index] = open;
+        this.high[index] = high;
+        this.low[index] = low;
+        this.close[index] = close;
+        this.tickVolume[index] = tickVolume;
+        this.volume[index] = volume;
+        this.spread[index] = spread;
+        SIZE.setRelease(this, index + 1);
+    }
+
+    /**
+     * Overwrites the last bar, for a bar that is still forming. Readers may see a mix of the
+     * old and the new values of that one bar until they read it again.
+     */
+    public void updateLast(double open, double high, double low, double close,
+                           int tickVolume, int volume, int spread) {
+        int index = (int) SIZE.getOpaque(this) - 1;
+        if (index < 0) {
+            throw new IllegalStateException("No bar to update");
+        }
+        this.open[index] = open;
+        this.high[index] = high;
+        this.low[index] = low;
+        this.close[index] = close;
+        this.tickVolume[index] = tickVolume;
+        this.volume[index] = volume;
+        this.spread[index] = spread;
+    }
+
+    /**
+     * Appends every bar of {@code other} in one bulk copy per column.
+     */
+    public void addAll(CandleSeries other) {
+        int count = other.size();
+        if (count == 0) {
+            return;
+        }
+        int index = (int) SIZE.getOpaque(this);
+        ensureCapacity(index + count);
+        System.arraycopy(other.time, 0, time, index, count);
+        System.arraycopy(other.open, 0, open, index, count);
+        System.arraycopy(other.high, 0, high, index, count);
+        System.arraycopy(other.low, 0, low, index, count);
+        System.arraycopy(other.close, 0, close, index, count);
+        System.arraycopy(other.tickVolume, 0, tickVolume, index, count);
+        System.arraycopy(other.volume, 0, volume, index, count);
+        System.arraycopy(other.spread, 0, spread, index, count);
+        SIZE.setRelease(this, index + count);
+    }
+
+    /**
+     * Makes sure the columns can hold at least {@code minCapacity} bars. Capacity grows by
+     * half of its current value so repeated appends stay amortised O(1).
+     */
+    public void ensureCapacity(int minCapacity) {
+        int capacity = time.length;
+        if (minCapacity <= capacity) {
+            return;
+        }
+        int newCapacity = Math.max(minCapacity, capacity + (capacity >> 1));
+        time = Arrays.copyOf(time, newCapacity);
+        open = Arrays.copyOf(open, newCapacity);
+        high = Arrays.copyOf(high, newCapacity);
+        low = Arrays.copyOf(low, newCapacity);
+        close = Arrays.copyOf(close, newCapacity);
+        tickVolume = Arrays.copyOf(tickVolume, newCapacity);
+        volume = Arrays.copyOf(volume, newCapacity);
+        spread = Arrays.copyOf(spread, newCapacity);
+    }
+
+    @Override
+    public int size() {
+        return (int) SIZE.getAcquire(this);
+    }
+
+    public int capacity() {
+        return time.length;
+    }
+
+    @Override
+    public long getTime(int index) {
+        return time[index];
+    }
+
+    @Override
+    public double getOpen(int index) {
+        return open[index];
+    }
+
+    @Override
+    public double getHigh(int index) {
+        return high[index];
+    }
+
+    @Override
+    public double getLow(int index) {
+        return low[index];
+    }
+
+    @Override
+    public double getClose(int index) {
+        return close[index];
+    }
+
+    @Override
+    public int getTickVolume(int index) {
+        return tickVolume[index];
+    }
+
+    @Override
+    public int getVolume(int index) {
+        return volume[index];
+    }
+
+    @Override
+    public int getSpread(int index) {
+        return spread[index];
+    }
+
+    /**
+     * Materialises a single bar as a {@link Candlestick}. Meant for callers that need an
+     * object (tooltips, debugging); render loops should use the index accessors.
+     */
+    public Candlestick getCandle(int index) {
+        return new Candlestick(open[index], high[index], low[index], close[index]);
+    }
+
+    @Override
+    public String toString() {
+        return "CandleSeries{" +
+                "size=" + size() +
+                ", capacity=" + time.length +
+                '}';
+    }
+}
@@ -0,0 +1,107 @@
+package concrete.goonie.datatypes;
+
+/**
+ * The bars of a {@link CandleData} as they were when the snapshot was taken, for painting a
+ * frame on another thread while the series keeps growing.
+ * <p>
+ * A series only ever appends bars and changes its last one in place, so the snapshot keeps the
+ * size it saw and a copy of the last bar, and reads every other bar from the series. Taking one
+ * costs a few field reads, whatever the length of the history.
+ */
+public final class CandleSnapshot implements CandleData {
+    private final CandleData source;
+    private final int size;
+    private final int last;
+    private final long lastTime;
+    private final double lastOpen;
+    private final double lastHigh;
+    private final double lastLow;
+    private final double lastClose;
+    private final int lastTickVolume;
+    private final int lastVolume;
+    private final int lastSpread;
+
+    private CandleSnapshot(CandleData source) {
+        this.source = source;
+        this.size = source.size();
+        this.last = size - 1;
+        boolean any = size > 0;
+        this.lastTime = any ? source.getTime(last) : 0;
+        this.lastOpen = any ? source.getOpen(last) : 0;
+        this.lastHigh = any ? source.getHigh(last) : 0;
+        this.lastLow = any ? source.getLow(last) : 0;
+        this.lastClose = any ? source.getClose(last) : 0;
+        this.lastTickVolume = any ? source.getTickVolume(last) : 0;
+        this.lastVolume = any ? source.getVolume(last) : 0;
+        this.lastSpread = any ? source.getSpread(last) : 0;
+    }
+
+    /**
+     * Takes a snapshot of the bars {@code data} holds now.
+     */
+    public static CandleSnapshot of(CandleData data) {
+        return new CandleSnapshot(data);
+    }
+
+    public CandleData getSource() {
+        return source;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long getTime(int index) {
+        return index == last ? lastTime : source.getTime(checked(index));
+    }
+
+    @Override
+    public double getOpen(int index) {
+        return index == last ? lastOpen : source.getOpen(checked(index));
+    }
+
+    @Override
+    public double getHigh(int index) {
+        return index == last ? lastHigh : source.getHigh(checked(index));
+    }
+
+    @Override
+    public double getLow(int index) {
+        return index == last ? lastLow : source.getLow(checked(index));
+    }
+
+    @Override
+    public double getClose(int index) {
+        return index == last ? lastClose : source.getClose(checked(index));
+    }
+
+    @Override
+    public int getTickVolume(int index) {
+        return index == last ? lastTickVolume : source.getTickVolume(checked(index));
+    }
+
+    @Override
+    public int getVolume(int index) {
+        return index == last ? lastVolume : source.getVolume(checked(index));
+    }
+
+    @Override
+    public int getSpread(int index) {
+        return index == last ? lastSpread : source.getSpread(checked(index));
+    }
+
+    // Bars appended after the snapshot are not part of it
+    private int checked(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Bar " + index + " of " + size);
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        return "CandleSnapshot{size=" + size + ", source=" + source + '}';
+    }
+}
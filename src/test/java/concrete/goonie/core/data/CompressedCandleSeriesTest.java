@@ -0,0 +1,141 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.datatypes.CandleData;
+import concrete.goonie.datatypes.CandleSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Encoding a series and decoding it must give back every value exactly.
+ */
+class CompressedCandleSeriesTest {
+    private static final long START = 1_700_000_000L;
+
+    // Around block boundaries: a partial last block, whole blocks, a single bar
+    @ParameterizedTest(name = "{0} bars")
+    @ValueSource(ints = {1, 2, 255, 256, 257, 512, 1000, 4099})
+    void randomWalkRoundTrips(int bars) {
+        Random random = new Random(bars);
+        CandleSeries series = new CandleSeries(bars);
+        long price = 1_234_5678;
+        for (int i = 0; i < bars; i++) {
+            long open = price + random.nextInt(21) - 10;
+            long close = open + random.nextInt(2001) - 1000;
+            long high = Math.max(open, close) + random.nextInt(300);
+            long low = Math.min(open, close) - random.nextInt(300);
+            series.add(START + 3600L * i, open / 1e4, high / 1e4, low / 1e4, close / 1e4,
+                    random.nextInt(5000), random.nextInt(100), random.nextInt(40));
+            price = close;
+        }
+
+        CompressedCandleSeries compressed = CompressedCandleSeries.encode(series);
+        assertEquals(10_000, compressed.getPriceScale());
+        assertSameBars(series, compressed);
+    }
+
+    // Missing bars, weekends, years apart, duplicates and going back in time: every time code
+    @Test
+    void gapsRoundTrip() {
+        long[] steps = {60, 60, 0, 60, -60, 3600, 60, 2 * 86_400, 60, 1L << 20, 60, -(1L << 30), 60,
+                86_400L * 365 * 40, 60, -86_400L * 365 * 80, 7, 60, 1L << 40};
+        CandleSeries series = new CandleSeries();
+        long time = START;
+        for (int i = 0; i < 600; i++) {
+            series.add(time, 1, 2, 0.5, 1.5, i, -i, Integer.MAX_VALUE - i);
+            time += steps[i % steps.length] * (1 + i / steps.length % 3);
+        }
+        assertSameBars(series, CompressedCandleSeries.encode(series));
+    }
+
+    @Test
+    void extremeVolumesRoundTrip() {
+        CandleSeries series = new CandleSeries();
+        int[] volumes = {Integer.MIN_VALUE, Integer.MAX_VALUE, 0, -1, 1};
+        for (int i = 0; i < 300; i++) {
+            int volume = volumes[i % volumes.length];
+            series.add(START + 60L * i, 10, 11, 9, 10.5, volume, -volume - 1, i);
+        }
+        assertSameBars(series, CompressedCandleSeries.encode(series));
+    }
+
+    @Test
+    void negativePricesRoundTrip() {
+        Random random = new Random(7);
+        CandleSeries series = new CandleSeries();
+        for (int i = 0; i < 700; i++) {
+            int open = random.nextInt(20_001) - 10_000;
+            int close = random.nextInt(20_001) - 10_000;
+            series.add(START + 60L * i, open / 100.0, (Math.max(open, close) + 25) / 100.0,
+                    (Math.min(open, close) - 25) / 100.0, close / 100.0, 1, 1, 1);
+        }
+        CompressedCandleSeries compressed = CompressedCandleSeries.encode(series);
+        assertEquals(100, compressed.getPriceScale());
+        assertSameBars(series, compressed);
+    }
+
+    // Prices far apart in one block need the widest steps
+    @Test
+    void largePriceStepsRoundTrip() {
+        CandleSeries series = new CandleSeries();
+        for (int i = 0; i < 300; i++) {
+            double price = i % 2 == 0 ? 0.001 : 8_000_000_000.125;
+            series.add(START + 60L * i, price, price, price, price, 0, 0, 0);
+        }
+        CompressedCandleSeries compressed = CompressedCandleSeries.encode(series);
+        assertEquals(1000, compressed.getPriceScale());
+        assertSameBars(series, compressed);
+    }
+
+    @Test
+    void choosesTheSmallestExactScale() {
+        assertEquals(1, CompressedCandleSeries.choosePriceScale(bar(12, 13, 11, 12)));
+        assertEquals(10, CompressedCandleSeries.choosePriceScale(bar(12, 13.5, 11, 12)));
+        assertEquals(100_000, CompressedCandleSeries.choosePriceScale(bar(1.08123, 1.1, 1.08, 1.08456)));
+        assertEquals(100_000_000, CompressedCandleSeries.choosePriceScale(bar(0.00000001, 1, 0, 0.5)));
+    }
+
+    @Test
+    void rejectsPricesItCannotStoreExactly() {
+        assertThrows(IllegalArgumentException.class, () -> CompressedCandleSeries.encode(bar(Double.NaN, 1, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> CompressedCandleSeries.encode(bar(1, Double.POSITIVE_INFINITY, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> CompressedCandleSeries.encode(bar(0.123456789, 1, 0, 1)));
+        assertThrows(IllegalArgumentException.class, () -> CompressedCandleSeries.encode(bar(1e300, 1e300, 0, 1)));
+    }
+
+    @Test
+    void emptySeriesEncodes() {
+        assertEquals(0, CompressedCandleSeries.encode(new CandleSeries()).size());
+    }
+
+    private static CandleSeries bar(double open, double high, double low, double close) {
+        CandleSeries series = new CandleSeries();
+        series.add(START, open, high, low, close, 1, 1, 1);
+        return series;
+    }
+
+    // Reads every other block first, so the decoded block cache is exercised out of order too
+    private static void assertSameBars(CandleData expected, CandleData actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < expected.size(); i++) {
+                if ((i / CompressedCandleSeries.BLOCK_BARS) % 2 != pass) {
+                    continue;
+                }
+                assertEquals(expected.getTime(i), actual.getTime(i), "time of bar " + i);
+                assertEquals(expected.getOpen(i), actual.getOpen(i), "open of bar " + i);
+                assertEquals(expected.getHigh(i), actual.getHigh(i), "high of bar " + i);
+                assertEquals(expected.getLow(i), actual.getLow(i), "low of bar " + i);
+                assertEquals(expected.getClose(i), actual.getClose(i), "close of bar " + i);
+                assertEquals(expected.getTickVolume(i), actual.getTickVolume(i), "tick volume of bar " + i);
+                assertEquals(expected.getVolume(i), actual.getVolume(i), "volume of bar " + i);
+                assertEquals(expected.getSpread(i), actual.getSpread(i), "spread of bar " + i);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package concrete.goonie.core.data;
+
+import concrete.goonie.datatypes.CandleSeries;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The hand-written number parsing must give the same doubles as {@link Double#parseDouble}.
+ */
+class Mt5CsvParserTest {
+    private static final String HEADER = "<DATE>\t<TIME>\t<OPEN>\t<HIGH>\t<LOW>\t<CLOSE>\t<TICKVOL>\t<VOL>\t<SPREAD>\n";
+
+    @Test
+    void parsesAnExportLine() throws IOException {
+        CandleSeries series = parse(HEADER + "2024.01.01\t01:00:00\t14240.5860\t14293.1330\t14227.2190\t14280.6780\t3542\t0\t1420\n");
+
+        assertEquals(1, series.size());
+        assertEquals(LocalDateTime.of(2024, 1, 1, 1, 0).toEpochSecond(ZoneOffset.UTC), series.getTime(0));
+        assertEquals(14240.5860, series.getOpen(0));
+        assertEquals(14293.1330, series.getHigh(0));
+        assertEquals(14227.2190, series.getLow(0));
+        assertEquals(14280.6780, series.getClose(0));
+        assertEquals(3542, series.getTickVolume(0));
+        assertEquals(0, series.getVolume(0));
+        assertEquals(1420, series.getSpread(0));
+    }
+
+    // More fraction digits than a double's powers of ten table holds, most of them leading zeros
+    @ParameterizedTest
+    @ValueSource(strings = {"0.0000000000000000001", "0.0000000000000000000", "0.00000000000000000000000012345",
+            "-0.0000000000000000009", "1.0000000000000000000", "12.000000000000000000001"})
+    void parsesLongFractions(String price) throws IOException {
+        CandleSeries series = parse(line(price));
+
+        assertEquals(1, series.size());
+        assertEquals(Double.parseDouble(price), series.getOpen(0));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "7", "-3.5", "0.1", "1.", "123456789012345678", "1234567890123456789012.5"})
+    void parsesOtherShapes(String price) throws IOException {
+        assertEquals(Double.parseDouble(price), parse(line(price)).getOpen(0));
+    }
+
+    // Prices as exported: at most 18 significant digits, which parse exactly
+    @Test
+    void matchesDoubleParsing() throws IOException {
+        Random random = new Random(1);
+        StringBuilder csv = new StringBuilder(HEADER);
+        String[] prices = new String[500];
+        for (int i = 0; i < prices.length; i++) {
+            int decimals = random.nextInt(9);
+            prices[i] = String.format("%." + decimals + "f", (random.nextDouble() - 0.2) * Math.pow(10, random.nextInt(8)));
+            csv.append(line(prices[i]));
+        }
+        CandleSeries series = parse(csv.toString());
+
+        assertEquals(prices.length, series.size());
+        for (int i = 0; i < prices.length; i++) {
+            assertEquals(Double.parseDouble(prices[i]), series.getOpen(i), prices[i]);
+        }
+    }
+
+    @Test
+    void skipsMalformedLines() throws IOException {
+        CandleSeries series = parse(HEADER + line("1.5") + "2024.01.01\t02:00:00\tx\t1\t1\t1\t1\t1\t1\n" + line("2.5"));
+
+        assertEquals(2, series.size());
+        assertEquals(1.5, series.getOpen(0));
+        assertEquals(2.5, series.getOpen(1));
+    }
+
+    private static String line(String open) {
+        return "2024.01.01\t00:00:00\t" + open + "\t1\t1\t1\t10\t0\t5\n";
+    }
+
+    private static CandleSeries parse(String csv) throws IOException {
+        return new Mt5CsvParser().parse(new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII)));
+    }
+}
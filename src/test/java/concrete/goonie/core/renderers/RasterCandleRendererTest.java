@@ -0,0 +1,146 @@
+package concrete.goonie.core.renderers;
+
+import concrete.goonie.ChartConfig;
+import concrete.goonie.ChartThemes;
+import concrete.goonie.core.Chart;
+import concrete.goonie.core.axis.TickPlanner;
+import concrete.goonie.core.axis.YAxis;
+import concrete.goonie.core.chartlayers.MainWindow;
+import concrete.goonie.core.data.Dataset;
+import concrete.goonie.core.data.DatasetRegistry;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * The raster backend must paint a pane exactly like the Java2D one with antialiasing off.
+ */
+class RasterCandleRendererTest {
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 500;
+
+    private static Dataset dataset;
+
+    @BeforeAll
+    static void loadHistory() {
+        dataset = DatasetRegistry.getInstance().acquire(Chart.DEFAULT_DATASET);
+        dataset.whenLoaded().join();
+    }
+
+    @AfterAll
+    static void releaseHistory() {
+        DatasetRegistry.getInstance().release(dataset);
+    }
+
+    // Bar widths from a sub-pixel to tens of pixels, at the start, early and deep in the history
+    static Stream<Arguments> viewports() {
+        Stream.Builder<Arguments> viewports = Stream.builder();
+        for (double scaleX : new double[]{0.05, 0.2, 0.6, 1, 1.7, 3, 6, 13, 20, 45}) {
+            for (double translateX : new double[]{0, -200 * scaleX, -3000 * scaleX + 450}) {
+                viewports.add(Arguments.of(scaleX, translateX));
+            }
+        }
+        return viewports.build();
+    }
+
+    @ParameterizedTest(name = "scaleX={0}, translateX={1}")
+    @MethodSource("viewports")
+    void rasterMatchesJava2D(double scaleX, double translateX) {
+        AffineTransform transform = viewport(scaleX, translateX);
+
+        BufferedImage java2d = render(ChartConfig.RenderBackend.JAVA2D, transform);
+        BufferedImage raster = render(ChartConfig.RenderBackend.RASTER, transform);
+
+        int differing = 0;
+        String first = null;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                if (java2d.getRGB(x, y) != raster.getRGB(x, y)) {
+                    if (first == null) {
+                        first = String.format("(%d, %d): %06x vs %06x", x, y,
+                                java2d.getRGB(x, y) & 0xFFFFFF, raster.getRGB(x, y) & 0xFFFFFF);
+                    }
+                    differing++;
+                }
+            }
+        }
+        if (differing > 0) {
+            fail(differing + " pixels differ, first at " + first);
+        }
+    }
+
+    // A strip repaint must paint exactly the clipped pixels of the full frame and nothing else
+    @ParameterizedTest(name = "scaleX={0}")
+    @ValueSource(doubles = {0.05, 0.6, 6, 20})
+    void rasterHonorsTheClip(double scaleX) {
+        AffineTransform transform = viewport(scaleX, -200 * scaleX);
+        ChartConfig config = ChartThemes.darkTheme().setEnableAntiAliasing(false);
+        RasterCandleRenderer renderer = new RasterCandleRenderer(config, dataset, new YAxis(config),
+                new TickPlanner(config, Chart.DEFAULT_DATASET.timeframe(), dataset));
+        BufferedImage full = null;
+        for (int frame = 0; frame < 3; frame++) {
+            full = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = full.createGraphics();
+            renderer.draw(g, transform, WIDTH, HEIGHT);
+            g.dispose();
+        }
+
+        int untouched = 0xFF00FF;
+        for (Rectangle clip : new Rectangle[]{new Rectangle(300, 40, 120, 300), new Rectangle(WIDTH - 90, 0, 200, HEIGHT),
+                new Rectangle(-20, 450, 60, 100), new Rectangle(500, 0, 1, HEIGHT)}) {
+            BufferedImage strip = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = strip.createGraphics();
+            g.setColor(new Color(untouched));
+            g.fillRect(0, 0, WIDTH, HEIGHT);
+            g.setClip(clip);
+            renderer.draw(g, transform, WIDTH, HEIGHT);
+            g.dispose();
+
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int expected = clip.contains(x, y) ? full.getRGB(x, y) & 0xFFFFFF : untouched;
+                    assertEquals(expected, strip.getRGB(x, y) & 0xFFFFFF, "pixel (" + x + ", " + y + ") with clip " + clip);
+                }
+            }
+        }
+    }
+
+    private static AffineTransform viewport(double scaleX, double translateX) {
+        AffineTransform transform = new AffineTransform();
+        transform.scale(1, -1);
+        transform.translate(translateX, -HEIGHT - 14000 * 0.6);
+        transform.scale(scaleX, scaleX > 2 ? 1.2 : 0.6);
+        return transform;
+    }
+
+    private static BufferedImage render(ChartConfig.RenderBackend backend, AffineTransform transform) {
+        ChartConfig config = ChartThemes.darkTheme()
+                .setEnableAntiAliasing(false)
+                .setRenderBackend(backend);
+        MainWindow window = new MainWindow(Chart.DEFAULT_DATASET.timeframe(), config, dataset);
+        window.setSize(WIDTH, HEIGHT);
+        window.setTransform(transform);
+
+        // The price axis strip is sized from the labels of the previous frame; let it settle
+        BufferedImage image = null;
+        for (int frame = 0; frame < 3; frame++) {
+            image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            window.printAll(g);
+            g.dispose();
+        }
+        window.dispose();
+        return image;
+    }
+}
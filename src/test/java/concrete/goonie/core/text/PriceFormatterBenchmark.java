@@ -0,0 +1,94 @@
+package concrete.goonie.core.text;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.text.DecimalFormat;
+
+/**
+ * Compares {@link PriceFormatter} with the {@link DecimalFormat} path the price axis used
+ * before it: {@code PriceFormatterBenchmark [decimals] [rounds]}.
+ * <p>
+ * Both format the labels of a price axis being panned, the grid values of a few spacings
+ * shifted by one step per frame. Each round reports the time and the heap allocated per
+ * label, measured on the benchmark thread; the first rounds are warm-up for the JIT. The
+ * labels of both paths are compared before timing, so the numbers are for identical text.
+ * <p>
+ * Lives with the tests so it stays out of the application jar; after {@code mvn test-compile}
+ * run it with {@code java -cp target/classes:target/test-classes
+ * concrete.goonie.core.text.PriceFormatterBenchmark}.
+ */
+public final class PriceFormatterBenchmark {
+    private static final int LABELS_PER_FRAME = 20;
+    private static final int FRAMES = 100_000;
+    private static final double[] GRID_SPACINGS = {0.0005, 0.25, 2.5, 25};
+
+    private PriceFormatterBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        int decimals = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+
+        StringBuilder pattern = new StringBuilder("#0.");
+        for (int i = 0; i < decimals; i++) {
+            pattern.append('0');
+        }
+        DecimalFormat decimalFormat = new DecimalFormat(pattern.toString());
+        PriceFormatter formatter = new PriceFormatter(decimals);
+        char[] out = new char[40];
+
+        int mismatches = 0;
+        for (int frame = 0; frame < 1000; frame++) {
+            for (int i = 0; i < LABELS_PER_FRAME; i++) {
+                double value = gridValue(frame, i);
+                String expected = decimalFormat.format(value).replace(',', '.');
+                if (!expected.equals(new String(out, 0, formatter.format(value, out)))) {
+                    mismatches++;
+                }
+            }
+        }
+        System.out.println("Label mismatches: " + mismatches);
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        com.sun.management.ThreadMXBean allocations = threads instanceof com.sun.management.ThreadMXBean
+                ? (com.sun.management.ThreadMXBean) threads : null;
+        long labels = (long) FRAMES * LABELS_PER_FRAME;
+        for (int round = 1; round <= rounds; round++) {
+            long bytes = allocatedBytes(allocations);
+            long start = System.nanoTime();
+            long sink = 0;
+            for (int frame = 0; frame < FRAMES; frame++) {
+                for (int i = 0; i < LABELS_PER_FRAME; i++) {
+                    sink += decimalFormat.format(gridValue(frame, i)).replace(',', '.').length();
+                }
+            }
+            long decimalFormatNanos = System.nanoTime() - start;
+            long decimalFormatBytes = allocatedBytes(allocations) - bytes;
+
+            bytes = allocatedBytes(allocations);
+            start = System.nanoTime();
+            for (int frame = 0; frame < FRAMES; frame++) {
+                for (int i = 0; i < LABELS_PER_FRAME; i++) {
+                    sink += formatter.format(gridValue(frame, i), out);
+                }
+            }
+            long formatterNanos = System.nanoTime() - start;
+            long formatterBytes = allocatedBytes(allocations) - bytes;
+
+            System.out.printf("Round %d: DecimalFormat %.1f ns, %.1f B per label; PriceFormatter %.1f ns, %.1f B per label (%d)%n",
+                    round, (double) decimalFormatNanos / labels, (double) decimalFormatBytes / labels,
+                    (double) formatterNanos / labels, (double) formatterBytes / labels, sink);
+        }
+    }
+
+    // Label i of a frame: the frames pan the axis one grid step at a time through each spacing
+    private static double gridValue(int frame, int i) {
+        double spacing = GRID_SPACINGS[frame % GRID_SPACINGS.length];
+        long first = 14_000 / (long) Math.max(1, spacing) + frame / GRID_SPACINGS.length % 1000;
+        return (first + i) * spacing;
+    }
+
+    private static long allocatedBytes(com.sun.management.ThreadMXBean allocations) {
+        return allocations == null ? 0 : allocations.getCurrentThreadAllocatedBytes();
+    }
+}